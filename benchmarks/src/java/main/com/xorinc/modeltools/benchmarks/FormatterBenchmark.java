@@ -0,0 +1,60 @@
+package com.xorinc.modeltools.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.google.gson.JsonObject;
+import com.xorinc.modeltools.JsonFormatter;
+import com.xorinc.modeltools.Model;
+
+
+// Output formatting alone, from a parsed tree and from a Model, as read and snapped to the grid.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatterBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	public int elements;
+
+	private JsonObject tree;
+	private Model model;
+
+	@Setup
+	public void setup() throws IOException {
+
+		tree = Models.model(elements);
+		model = Model.read(new StringReader(tree.toString()));
+	}
+
+	@Benchmark
+	public String format() throws Exception {
+
+		StringWriter w = new StringWriter();
+		new JsonFormatter(w, "    ").write(tree);
+		return w.toString();
+	}
+
+	@Benchmark
+	public String formatModel() throws Exception {
+
+		StringWriter w = new StringWriter();
+		new JsonFormatter(w, "    ").write(model);
+		return w.toString();
+	}
+
+	@Benchmark
+	public String formatModelGrid() throws Exception {
+
+		StringWriter w = new StringWriter();
+		new JsonFormatter(w, "    ", 16).write(model);
+		return w.toString();
+	}
+}
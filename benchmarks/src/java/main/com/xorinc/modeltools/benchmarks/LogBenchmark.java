@@ -0,0 +1,56 @@
+package com.xorinc.modeltools.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xorinc.modeltools.Log;
+import com.xorinc.modeltools.tools.Tool;
+import com.xorinc.modeltools.tools.Translate;
+
+
+// What diagnostics cost per call with logging off, against tracing into a discarded stream.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogBenchmark {
+
+	@Param({ "OFF", "TRACE" })
+	public Log.Level level;
+
+	@Param({ "1000" })
+	public int elements;
+
+	private Tool.Args<Translate> args;
+	private byte[] model;
+
+	@Setup
+	public void setup() throws Throwable {
+
+		Models.init();
+		Log.level(level);
+
+		args = Translate.inst.getParser().convert("1,2,3");
+		model = Models.bytes(elements);
+	}
+
+	@TearDown
+	public void tearDown() {
+
+		Log.level(Log.Level.OFF);
+	}
+
+	@Benchmark
+	public void execute(Blackhole bh) throws Exception {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(model.length * 2);
+		Translate.inst.execute(new ByteArrayInputStream(model), out, args);
+		bh.consume(out.size());
+	}
+}
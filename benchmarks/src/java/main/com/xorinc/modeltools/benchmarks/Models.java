@@ -0,0 +1,138 @@
+package com.xorinc.modeltools.benchmarks;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.xorinc.modeltools.Main;
+
+
+// Synthetic block models shaped like real ones, so results scale with element count only.
+public class Models {
+
+	private static final String[] faces = { "down", "up", "north", "south", "west", "east" };
+
+	// Main keeps its output settings in statics, a run without files just sets them up
+	public static void init() throws Throwable {
+
+		PrintStream sink = new PrintStream(ByteStreams.nullOutputStream());
+		Main.run(null, sink, sink, "-t", "translate", "--opt", "0,0,0");
+	}
+
+	public static JsonObject model(int elements) {
+
+		Random r = new Random(elements);
+		JsonObject tree = new JsonObject();
+
+		JsonObject textures = new JsonObject();
+		textures.addProperty("particle", "#side");
+		textures.addProperty("side", "blocks/stone");
+		textures.addProperty("top", "blocks/stone");
+		tree.add("textures", textures);
+
+		JsonArray els = new JsonArray();
+
+		for(int i = 0; i < elements; i++){
+
+			JsonObject el = new JsonObject();
+			int x = r.nextInt(16), y = r.nextInt(16), z = r.nextInt(16);
+
+			el.add("from", vec(x, y, z));
+			el.add("to", vec(x + 1 + r.nextInt(16 - x), y + 1 + r.nextInt(16 - y), z + 1 + r.nextInt(16 - z)));
+
+			if(i % 8 == 0){
+				JsonObject rot = new JsonObject();
+				rot.add("origin", vec(8, 8, 8));
+				rot.addProperty("axis", "y");
+				rot.addProperty("angle", 22.5);
+				el.add("rotation", rot);
+			}
+
+			JsonObject fs = new JsonObject();
+
+			for(String f : faces){
+
+				JsonObject face = new JsonObject();
+
+				// half the faces leave their uv to be filled in by the tools
+				if(r.nextBoolean()){
+					JsonArray uv = new JsonArray();
+					uv.add(new JsonPrimitive(0));
+					uv.add(new JsonPrimitive(0));
+					uv.add(new JsonPrimitive(16));
+					uv.add(new JsonPrimitive(16));
+					face.add("uv", uv);
+				}
+
+				face.addProperty("texture", f.equals("up") ? "#top" : "#side");
+				face.addProperty("cullface", f);
+				fs.add(f, face);
+			}
+
+			el.add("faces", fs);
+			els.add(el);
+		}
+
+		tree.add("elements", els);
+
+		JsonObject display = new JsonObject();
+		JsonObject gui = new JsonObject();
+		gui.add("rotation", vec(30, 45, 0));
+		gui.add("translation", vec(0, 0, 0));
+		gui.add("scale", vec(0.625, 0.625, 0.625));
+		display.add("gui", gui);
+		tree.add("display", display);
+
+		return tree;
+	}
+
+	// cubes packed side by side, like a model built out of voxels. their size is a power of two, as it is on the 1/16 grid
+	public static JsonObject voxels(int elements) {
+
+		int side = Integer.highestOneBit((int) Math.ceil(Math.cbrt(elements)) - 1) << 1;
+		double size = 16.0 / side;
+		JsonObject tree = new JsonObject();
+		JsonArray els = new JsonArray();
+
+		for(int i = 0; i < elements; i++){
+
+			double x = size * (i % side), y = size * (i / side % side), z = size * (i / side / side);
+			JsonObject el = new JsonObject();
+			JsonObject fs = new JsonObject();
+
+			el.add("from", vec(x, y, z));
+			el.add("to", vec(x + size, y + size, z + size));
+
+			for(String f : faces){
+				JsonObject face = new JsonObject();
+				face.addProperty("texture", "#side");
+				fs.add(f, face);
+			}
+
+			el.add("faces", fs);
+			els.add(el);
+		}
+
+		tree.add("elements", els);
+
+		return tree;
+	}
+
+	public static byte[] bytes(int elements) {
+
+		return model(elements).toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static JsonArray vec(double x, double y, double z) {
+
+		JsonArray a = new JsonArray();
+		a.add(new JsonPrimitive(x));
+		a.add(new JsonPrimitive(y));
+		a.add(new JsonPrimitive(z));
+		return a;
+	}
+}
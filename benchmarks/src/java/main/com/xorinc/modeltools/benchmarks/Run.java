@@ -0,0 +1,19 @@
+package com.xorinc.modeltools.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+// Same as the JMH launcher, but always reports allocation rates through the GC profiler.
+public class Run {
+
+	public static void main(String... args) throws Exception {
+
+		new Runner(new OptionsBuilder()
+					.parent(new CommandLineOptions(args))
+					.addProfiler(GCProfiler.class)
+					.build()).run();
+	}
+}
@@ -0,0 +1,163 @@
+package com.xorinc.modeltools.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.xorinc.modeltools.Face;
+import com.xorinc.modeltools.Model;
+import com.xorinc.modeltools.SpatialIndex;
+
+
+// Building a SpatialIndex and querying it, against scanning every element for the same answers.
+// Each query benchmark runs a fixed batch of queries and returns the number of hits.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+	private static final int QUERIES = 256;
+
+	@Param({ "1000", "10000", "100000" })
+	public int elements;
+
+	// random overlapping boxes, or packed cubes
+	@Param({ "random", "voxels" })
+	public String shape;
+
+	private Model model;
+	private SpatialIndex index;
+
+	private final double[][] lo = new double[QUERIES][3], hi = new double[QUERIES][3];
+	private final int[] element = new int[QUERIES], face = new int[QUERIES];
+
+	@Setup
+	public void setup() throws IOException {
+
+		model = Model.read(new StringReader((shape.equals("voxels") ? Models.voxels(elements) : Models.model(elements)).toString()));
+		index = new SpatialIndex(model);
+
+		Random r = new Random(elements);
+
+		for(int q = 0; q < QUERIES; q++){
+
+			for(int a = 0; a < 3; a++){
+				lo[q][a] = 16 * r.nextDouble();
+				hi[q][a] = lo[q][a] + r.nextDouble();
+			}
+
+			element[q] = r.nextInt(model.size);
+			face[q] = r.nextInt(6);
+		}
+	}
+
+	@Benchmark
+	public SpatialIndex build() {
+
+		return new SpatialIndex(model);
+	}
+
+	@Benchmark
+	public int boxIndex() {
+
+		int[] hits = { 0 };
+
+		for(int q = 0; q < QUERIES; q++)
+			index.box(lo[q], hi[q], i -> { hits[0]++; return false; });
+
+		return hits[0];
+	}
+
+	@Benchmark
+	public int boxScan() {
+
+		int hits = 0;
+
+		for(int q = 0; q < QUERIES; q++){
+			for(int i = 0; i < model.size; i++){
+				if(touches(i, lo[q], hi[q]))
+					hits++;
+			}
+		}
+
+		return hits;
+	}
+
+	@Benchmark
+	public int pointIndex() {
+
+		int[] hits = { 0 };
+
+		for(int q = 0; q < QUERIES; q++)
+			index.point(lo[q][0], lo[q][1], lo[q][2], i -> { hits[0]++; return false; });
+
+		return hits[0];
+	}
+
+	@Benchmark
+	public int pointScan() {
+
+		int hits = 0;
+
+		for(int q = 0; q < QUERIES; q++){
+			for(int i = 0; i < model.size; i++){
+				if(touches(i, lo[q], lo[q]))
+					hits++;
+			}
+		}
+
+		return hits;
+	}
+
+	@Benchmark
+	public int adjacentIndex() {
+
+		int[] hits = { 0 };
+
+		for(int q = 0; q < QUERIES; q++)
+			index.adjacent(element[q], face[q], i -> { hits[0]++; return false; });
+
+		return hits[0];
+	}
+
+	@Benchmark
+	public int adjacentScan() {
+
+		int hits = 0;
+
+		for(int q = 0; q < QUERIES; q++){
+
+			int e = element[q], f = face[q];
+			int a = Face.of(f).axis, b = (a + 1) % 3, c = (a + 2) % 3;
+			double at = (f & 1) == 1 ? index.hi(e, a) : index.lo(e, a);
+
+			for(int i = 0; i < model.size; i++){
+
+				if(i == e || ((f & 1) == 1 ? index.lo(i, a) > at || index.hi(i, a) <= at : index.lo(i, a) >= at || index.hi(i, a) < at))
+					continue;
+
+				if(index.lo(i, b) < index.hi(e, b) && index.hi(i, b) > index.lo(e, b) && index.lo(i, c) < index.hi(e, c) && index.hi(i, c) > index.lo(e, c))
+					hits++;
+			}
+		}
+
+		return hits;
+	}
+
+	// against the same bounds the index has, rotated elements included
+	private boolean touches(int i, double[] lo, double[] hi) {
+
+		for(int a = 0; a < 3; a++){
+			if(index.lo(i, a) > hi[a] || index.hi(i, a) < lo[a])
+				return false;
+		}
+
+		return true;
+	}
+}
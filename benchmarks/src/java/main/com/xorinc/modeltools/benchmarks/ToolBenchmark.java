@@ -0,0 +1,98 @@
+package com.xorinc.modeltools.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.Main;
+import com.xorinc.modeltools.tools.Tool;
+
+
+// Whole execute() calls, parse to formatted output, for every tool.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolBenchmark {
+
+	@Param({ "rotate", "translate", "resize", "resizeitem", "combine", "optimize" })
+	public String tool;
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	public int elements;
+
+	private Tool<?> t;
+	private Tool.Args<?> args;
+	private Context ctx;
+	// combine's parts and variants
+	private File dir;
+	private byte[] model;
+
+	@Setup
+	public void setup() throws Throwable {
+
+		Models.init();
+
+		t = Main.tool(tool);
+		model = Models.bytes(elements);
+
+		dir = Files.createTempDirectory("ModelToolsbench").toFile();
+		ctx = new Context(new File(dir, "model.json"), new File(dir, "model.json"));
+
+		String opt;
+
+		switch(tool) {
+
+		case "rotate": opt = "90,y"; break;
+		case "translate": opt = "1,2,3"; break;
+		case "resize": opt = "0.5"; break;
+		case "resizeitem": opt = "2"; break;
+		case "optimize": opt = null; break;
+
+		// two groups of two small parts, four variants written per call
+		case "combine":
+			File[] parts = new File[4];
+			for(int i = 0; i < parts.length; i++){
+				parts[i] = new File(dir, "part" + i + ".json");
+				Files.write(parts[i].toPath(), Models.bytes(4));
+			}
+			opt = parts[0] + "," + parts[1] + " " + parts[2] + "," + parts[3];
+			break;
+
+		default: throw new IllegalArgumentException(tool);
+		}
+
+		args = opt == null ? null : t.getParser().convert(opt);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+
+		try(Stream<Path> walk = Files.walk(dir.toPath())){
+
+			// children before their directory
+			for(Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(p);
+		}
+	}
+
+	@Benchmark
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void execute(Blackhole bh) throws Exception {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(model.length * 2);
+		((Tool) t).execute(new ByteArrayInputStream(model), out, (Tool.Args) args, ctx);
+		bh.consume(out.size());
+	}
+}
@@ -0,0 +1,40 @@
+#!/bin/sh
+# Runs every case in `cases' with the packaged jar and compares what it writes with expected/.
+# Build the jar first with `mvn package' in the root. With --update, the outputs replace expected/ instead.
+
+cd "$(dirname "$0")" || exit 1
+
+jar=$(ls ../target/ModelTools-*.jar 2>/dev/null | grep -v original | head -n 1)
+
+if [ -z "$jar" ]; then
+	echo "no jar in ../target, run mvn package first" >&2
+	exit 1
+fi
+
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+
+failed=0
+
+while read -r name model args; do
+
+	case "$name" in ''|'#'*) continue;; esac
+
+	if ! eval "java -jar \"$jar\" $args -o \"$out/$name.json\" \"models/$model\" < /dev/null" > "$out/$name.log" 2>&1; then
+		echo "FAILED $name:" >&2
+		cat "$out/$name.log" >&2
+		failed=1
+		continue
+	fi
+
+	if [ "$1" = "--update" ]; then
+		cp "$out/$name.json" "expected/$name.json"
+	elif ! diff -u "expected/$name.json" "$out/$name.json" > "$out/$name.diff"; then
+		echo "DIFFERS $name:" >&2
+		cat "$out/$name.diff" >&2
+		failed=1
+	fi
+
+done < cases
+
+exit $failed
@@ -0,0 +1,177 @@
+package com.xorinc.modeltools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.tools.Tool;
+
+
+// Rewrites the models inside a resource pack archive into a new archive, copying everything else.
+public class Archive {
+
+	private static final Map<String, String> create = ImmutableMap.of("create", "true");
+
+	private final Tool<?> tool;
+	private final Tool.Args<?> args;
+	private final int threads;
+	private final boolean flatten;
+
+	private boolean failed;
+
+	public Archive(Tool<?> tool, Tool.Args<?> args, int threads, boolean flatten){
+		this.tool = tool;
+		this.args = args;
+		this.threads = threads;
+		this.flatten = flatten;
+	}
+
+	public static boolean accepts(File f) {
+
+		String ext = FileUtils.getExtension(f.getName()).toLowerCase();
+		return ext.equals("zip") || ext.equals("jar");
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public boolean process(Context ctx) throws IOException {
+
+		if(((Tool) tool).multifile((Tool.Args) args)){
+
+			Main.err.printf("Error executing on file `%s'! Tools that write their own files can't be used on archives.%n", ctx.in.getName());
+			return false;
+		}
+
+		Log.info(() -> ctx);
+
+		Path in = ctx.in.toPath();
+
+		// also when rewriting in place, the input is only replaced once the new archive is complete
+		try(OutputCommitter out = new OutputCommitter(ctx.out.toPath())){
+
+			// the zip filesystem wants to create the file itself
+			Files.delete(out.temp());
+
+			try(FileSystem src = FileSystems.newFileSystem(in, (ClassLoader) null);
+				FileSystem dst = FileSystems.newFileSystem(URI.create("jar:" + out.temp().toUri()), create)){
+
+				copy(src, dst, ctx.in);
+			}
+
+			// models that failed were copied unchanged, so the new archive is complete either way
+			out.commit();
+		}
+
+		return !failed;
+	}
+
+	private void copy(FileSystem src, FileSystem dst, File archive) throws IOException {
+
+		PathMatcher models = src.getPathMatcher("glob:/assets/*/models/**.json");
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+		Path assets = src.getPath("/assets");
+		ParentResolver parents = flatten && Files.isDirectory(assets) ? new ParentResolver(assets) : null;
+		Deque<Entry> pending = new ArrayDeque<>();
+
+		try(Stream<Path> walk = Files.walk(src.getPath("/"))){
+
+			for(Path p : (Iterable<Path>) walk::iterator){
+
+				Path q = dst.getPath(p.toString());
+
+				if(Files.isDirectory(p)){
+
+					Files.createDirectories(q);
+					continue;
+				}
+
+				// each model is named by where it is in the archive, e.g. pack.zip!/assets/minecraft/models/block/stone.json
+				Context ctx = new Context(new File(archive.getPath() + "!" + p), null, parents);
+
+				pending.add(new Entry(p, q, models.matches(p) ? pool.submit(() -> transform(p, ctx)) : null));
+
+				// entries are written in archive order as soon as the ones before them are done
+				while(!pending.isEmpty() && pending.peek().isDone())
+					pending.poll().write();
+			}
+
+			while(!pending.isEmpty())
+				pending.poll().write();
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private byte[] transform(Path p, Context ctx) throws ToolException, IOException {
+
+		Log.info(() -> p);
+
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+		try(InputStream is = Files.newInputStream(p)){
+
+			((Tool) tool).execute(is, buf, (Tool.Args) args, ctx);
+		}
+
+		return buf.toByteArray();
+	}
+
+	private class Entry {
+
+		final Path from, to;
+		final ForkJoinTask<byte[]> model;
+
+		Entry(Path from, Path to, ForkJoinTask<byte[]> model){
+			this.from = from;
+			this.to = to;
+			this.model = model;
+		}
+
+		boolean isDone() {
+
+			return model == null || model.isDone();
+		}
+
+		void write() throws IOException {
+
+			if(model == null){
+
+				Files.copy(from, to, StandardCopyOption.COPY_ATTRIBUTES);
+				return;
+			}
+
+			try {
+				Files.write(to, model.join());
+
+			} catch (RuntimeException e) {
+
+				Main.err.printf("Error executing on entry `%s'!", from);
+				Main.err.println(Throwables.getRootCause(e).getMessage());
+
+				// keep the archive complete, the original model is left as it was
+				Files.copy(from, to, StandardCopyOption.COPY_ATTRIBUTES);
+				failed = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.xorinc.modeltools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.tools.Tool;
+
+
+// Runs one tool over files as they are submitted, reporting results in submission order.
+public class Batch implements AutoCloseable {
+
+	private final Tool<?> tool;
+	private final Tool.Args<?> args;
+	private final BuildCache cache;
+	private final String format;
+
+	private final ForkJoinPool pool;
+	private final Deque<ForkJoinTask<Result>> pending = new ArrayDeque<>();
+
+	private boolean failed;
+
+	public Batch(Tool<?> tool, Tool.Args<?> args, int threads, BuildCache cache, String format){
+		this.tool = tool;
+		this.args = args;
+		this.cache = cache;
+		this.format = format;
+		this.pool = new ForkJoinPool(Math.max(1, threads));
+	}
+
+	public void submit(Context ctx) {
+
+		pending.add(pool.submit(() -> process(ctx)));
+
+		// report whatever has already finished, without waiting on the rest
+		while(!pending.isEmpty() && pending.peek().isDone())
+			report(pending.poll().join());
+	}
+
+	public void fail() {
+
+		failed = true;
+	}
+
+	// waits for everything submitted and returns whether all of it succeeded
+	public boolean finish() throws IOException {
+
+		while(!pending.isEmpty())
+			report(pending.poll().join());
+
+		if(cache != null)
+			cache.save();
+
+		return !failed;
+	}
+
+	@Override
+	public void close() {
+
+		pool.shutdown();
+	}
+
+	private void report(Result r) {
+
+		failed |= !r.report();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Result process(Context ctx) {
+
+		Tool t = tool;
+		Tool.Args a = args;
+
+		Log.info(() -> ctx.in);
+
+		try {
+			String key = cache != null && !t.multifile(a) ? cache.key(ctx.in, t, a, format) : null;
+
+			if(key != null && cache.current(key, ctx.out)){
+
+				Log.info(() -> "up to date: " + ctx.out);
+				return new Result(ctx, null);
+			}
+
+			if(t.multifile(a)){
+
+				// writes its own files, there's nothing to commit
+				try(InputStream is = new FileInputStream(ctx.in)){
+					t.execute(is, ByteStreams.nullOutputStream(), a, ctx);
+				}
+
+				return new Result(ctx, null);
+			}
+
+			try(OutputCommitter out = new OutputCommitter(ctx.out.toPath())){
+
+				try(InputStream is = new FileInputStream(ctx.in); OutputStream os = out.stream()){
+					t.execute(is, os, a, ctx);
+				}
+
+				// leave identical outputs alone so their mtime doesn't change
+				if(ctx.out.isFile() && Files.equal(out.temp().toFile(), ctx.out))
+					Log.info(() -> "unchanged: " + ctx.out);
+				else
+					out.commit();
+			}
+
+			if(key != null)
+				cache.put(key, ctx.in, ctx.out);
+
+			return new Result(ctx, null);
+
+		} catch (Exception e) {
+
+			return new Result(ctx, e);
+		}
+	}
+
+	private static class Result {
+
+		final Context ctx;
+		final Exception error;
+
+		Result(Context ctx, Exception error){
+			this.ctx = ctx;
+			this.error = error;
+		}
+
+		boolean report() {
+
+			if(error instanceof ToolException){
+
+				Main.err.printf("Error executing on file `%s'!", ctx.in.getName());
+				Main.err.println(error.getMessage());
+
+			} else if(error != null){
+
+				Main.err.println("Error applying tool!");
+				error.printStackTrace(Main.err);
+			}
+
+			return error == null;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.xorinc.modeltools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.xorinc.modeltools.tools.Pipeline;
+import com.xorinc.modeltools.tools.Tool;
+
+
+public class BuildCache {
+
+	private static final HashFunction hash = Hashing.sha1();
+
+	private static final String buildVersion = Util.getOrElse(BuildCache.class.getPackage().getImplementationVersion(), "dev");
+	// bump when keys are made differently, so entries from before are redone
+	private static final int KEY_FORMAT = 2;
+
+	private final File file;
+
+	// output path -> what it was last made from, so there's one entry per output however often its input changes
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private boolean dirty;
+
+	private BuildCache(File file){
+		this.file = file;
+	}
+
+	public static BuildCache load(File file) throws IOException {
+
+		BuildCache cache = new BuildCache(file);
+
+		if(file.exists()){
+			for(String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)){
+
+				// key, output hash, then input and output paths split by a tab
+				String[] parts = line.split(" ", 3);
+				String[] paths = parts.length == 3 ? parts[2].split("\t", 2) : null;
+
+				if(paths != null && paths.length == 2)
+					cache.entries.put(paths[1], new Entry(parts[0], parts[1], paths[0]));
+			}
+		}
+
+		return cache;
+	}
+
+	public String key(File input, Tool<?> tool, Tool.Args<?> args, String format) throws IOException {
+
+		String k = String.join("\0",
+				hash(input),
+				tool.getClass().getSimpleName().toLowerCase(),
+				args == null ? "" : args.key(),
+				version(tool, args),
+				format);
+
+		return hash.hashString(k, StandardCharsets.UTF_8).toString();
+	}
+
+	public boolean current(String key, File out) throws IOException {
+
+		Entry e = entries.get(out.getAbsolutePath());
+
+		return e != null && e.key.equals(key) && out.isFile() && e.output.equals(hash(out));
+	}
+
+	public void put(String key, File input, File output) throws IOException {
+
+		entries.put(output.getAbsolutePath(), new Entry(key, hash(output), input.getAbsolutePath()));
+		dirty = true;
+	}
+
+	public void save() throws IOException {
+
+		// inputs or outputs that are gone since they were made
+		if(entries.entrySet().removeIf(e -> !new File(e.getKey()).isFile() || !new File(e.getValue().input).isFile()))
+			dirty = true;
+
+		if(!dirty)
+			return;
+
+		List<String> lines = entries.entrySet().stream()
+								.map(e -> e.getValue().key + " " + e.getValue().output + " " + e.getValue().input + "\t" + e.getKey())
+								.sorted()
+								.collect(Collectors.toList());
+
+		try(OutputCommitter commit = new OutputCommitter(file.toPath())){
+
+			Files.write(commit.temp(), lines, StandardCharsets.UTF_8);
+			commit.commit();
+		}
+
+		dirty = false;
+	}
+
+	private static String hash(File f) throws IOException {
+
+		return com.google.common.io.Files.hash(f, hash).toString();
+	}
+
+	private static String version(Tool<?> tool, Tool.Args<?> args) {
+
+		if(args instanceof Pipeline.Args){
+			return buildVersion + "/" + KEY_FORMAT + ":" + ((Pipeline.Args) args).stages.stream()
+											.map(s -> String.valueOf(s.tool.version()))
+											.collect(Collectors.joining(","));
+		}
+
+		return buildVersion + "/" + KEY_FORMAT + ":" + tool.version();
+	}
+
+	private static final class Entry {
+
+		final String key, output, input;
+
+		Entry(String key, String output, String input){
+			this.key = key;
+			this.output = output;
+			this.input = input;
+		}
+	}
+}
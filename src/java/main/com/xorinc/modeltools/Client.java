@@ -0,0 +1,79 @@
+package com.xorinc.modeltools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+// Forwards its arguments to a running `Main --serve'. Only uses the JDK so it starts fast.
+public class Client {
+
+	public static void main(String... args) throws IOException {
+
+		List<String> argv = new ArrayList<>(Arrays.asList(args));
+
+		if(System.in.available() > 0) {
+			new BufferedReader(new InputStreamReader(System.in)).lines().forEach(argv::add);
+		}
+
+		int port = Integer.getInteger("modeltools.port", Server.DEFAULT_PORT);
+		String token;
+
+		try {
+			token = new String(Files.readAllBytes(Server.tokenFile(port).toPath()), StandardCharsets.UTF_8).trim();
+		} catch (NoSuchFileException e) {
+
+			System.err.println("No server running on port " + port + ", start one with --serve.");
+			System.exit(1);
+			return;
+		}
+
+		try(Socket s = new Socket(InetAddress.getLoopbackAddress(), port)){
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+
+			out.writeUTF(token);
+			out.writeUTF(new File("").getAbsolutePath());
+			out.writeInt(argv.size());
+
+			for(String arg : argv)
+				out.writeUTF(arg);
+
+			out.flush();
+
+			while(true){
+
+				byte type = in.readByte();
+
+				if(type == Server.EXIT){
+
+					System.out.flush();
+					System.err.flush();
+					System.exit(in.readInt());
+				}
+
+				byte[] b = new byte[in.readInt()];
+				in.readFully(b);
+
+				PrintStream target = type == Server.ERR ? System.err : System.out;
+				target.write(b);
+				target.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.xorinc.modeltools;
+
+import java.io.File;
+
+
+public class Context {
+
+	public final File in, out;
+	// set when models should be flattened before the tool sees them
+	public final ParentResolver parents;
+
+	public Context(File in, File out){
+		this(in, out, null);
+	}
+
+	public Context(File in, File out, ParentResolver parents){
+		this.in = in;
+		this.out = out;
+		this.parents = parents;
+	}
+
+	public String toString() {
+
+		return String.format("%s -> %s", in, out);
+	}
+}
@@ -0,0 +1,123 @@
+package com.xorinc.modeltools;
+
+
+// The six faces of an element, in the order of Model's face indices, with what the geometry tools look up
+// per face: where it looks, how a uv lies on it, and where it goes when its element is turned.
+public enum Face {
+
+	DOWN(1, 0, 2, false, true),
+	UP(1, 0, 2, false, false),
+	NORTH(2, 0, 1, true, true),
+	SOUTH(2, 0, 1, false, true),
+	WEST(0, 2, 1, false, true),
+	EAST(0, 2, 1, true, true);
+
+	private static final Face[] values = values();
+
+	// sine and cosine of 0, 1, 2 and 3 quarter turns
+	private static final int[] QUARTER_SIN = { 0, 1, 0, -1 }, QUARTER_COS = { 1, 0, -1, 0 };
+
+	// TURNED[axis][turns][face] is what the face becomes after that many quarter turns about the axis
+	private static final Face[][][] TURNED = new Face[3][4][6], UNTURNED = new Face[3][4][6];
+
+	// the axis it looks along, towards + for up, south and east
+	public final int axis;
+	public final boolean positive;
+	// the axes u and v run along
+	public final int u, v;
+	// whether the uv the game makes up for it runs backwards along them, with u1 or v1 at the far end
+	public final boolean uFlipped, vFlipped;
+	// as in the json
+	public final String id;
+
+	private Face(int axis, int u, int v, boolean uFlipped, boolean vFlipped){
+
+		this.axis = axis;
+		this.positive = (ordinal() & 1) == 1;
+		this.u = u;
+		this.v = v;
+		this.uFlipped = uFlipped;
+		this.vFlipped = vFlipped;
+		this.id = name().toLowerCase();
+	}
+
+	static {
+
+		for(int axis = 0; axis < 3; axis++){
+
+			// the same turn as Affine.rotate, in the plane of the other two axes
+			int p = axis == 0 ? 1 : 0, q = axis == 2 ? 1 : 2;
+
+			for(int turns = 0; turns < 4; turns++){
+
+				for(Face f : values){
+
+					int[] n = new int[3];
+					n[f.axis] = f.positive ? 1 : -1;
+
+					int np = n[p], nq = n[q];
+
+					n[p] = QUARTER_COS[turns] * np - QUARTER_SIN[turns] * nq;
+					n[q] = QUARTER_SIN[turns] * np + QUARTER_COS[turns] * nq;
+
+					Face g = facing(n);
+
+					TURNED[axis][turns][f.ordinal()] = g;
+					UNTURNED[axis][turns][g.ordinal()] = f;
+				}
+			}
+		}
+	}
+
+	public static Face of(int face) {
+
+		return values[face];
+	}
+
+	// the face that looks the way n points
+	private static Face facing(int[] n) {
+
+		for(Face f : values){
+			if(n[f.axis] == (f.positive ? 1 : -1))
+				return f;
+		}
+
+		throw new IllegalArgumentException();
+	}
+
+	public Face turn(int axis, int turns) {
+
+		return TURNED[axis][turns & 3][ordinal()];
+	}
+
+	// the face that turns into this one
+	public Face unturn(int axis, int turns) {
+
+		return UNTURNED[axis][turns & 3][ordinal()];
+	}
+
+	// the uv the tools fill in for a face that has none, from the element's box (from at box[0..2], to at box[3..5]),
+	// into uv[off..off+3]. with flipV, a v along y counts down from the top of the block
+	public void project(double[] box, boolean flipV, double[] uv, int off) {
+
+		uv[off] = box[u];
+		uv[off + 2] = box[3 + u];
+
+		if(flipV && v == 1){
+			uv[off + 1] = 16 - box[3 + v];
+			uv[off + 3] = 16 - box[v];
+		} else {
+			uv[off + 1] = box[v];
+			uv[off + 3] = box[3 + v];
+		}
+	}
+
+	// the uv the game makes up for a face that has none
+	public void gameUV(double[] box, double[] uv, int off) {
+
+		uv[off] = uFlipped ? 16 - box[3 + u] : box[u];
+		uv[off + 2] = uFlipped ? 16 - box[u] : box[3 + u];
+		uv[off + 1] = vFlipped ? 16 - box[3 + v] : box[v];
+		uv[off + 3] = vFlipped ? 16 - box[v] : box[3 + v];
+	}
+}
@@ -0,0 +1,807 @@
+package com.xorinc.modeltools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+
+public class JsonFormatter {
+
+	private static final Set<String> coords = ImmutableSet.of("from", "to", "rotation", "scale", "translation");
+	private static final Set<String> faces = ImmutableSet.of("up", "down", "north", "south", "east", "west");
+
+	private static final ImmutableList<String> rotationKeys = ImmutableList.of("origin", "axis", "angle");
+	private static final ImmutableList<String> faceKeys = ImmutableList.of("uv", "texture", "cullface", "rotation", "tintindex");
+
+	// how far from a step of the grid a value may be and still be taken for it, well above rounding noise
+	private static final double SNAP = 1e-6;
+	// the most binary places a number may have to be written exactly, so 5^n times its fraction fits in a long
+	private static final int MAX_PLACES = 16;
+	private static final double[] POW10 = new double[MAX_PLACES + 1];
+	private static final long[] POW5 = new long[MAX_PLACES + 1];
+
+	static {
+
+		POW10[0] = 1;
+		POW5[0] = 1;
+
+		for(int n = 1; n <= MAX_PLACES; n++){
+			POW10[n] = POW10[n - 1] * 10;
+			POW5[n] = POW5[n - 1] * 5;
+		}
+	}
+
+	private final Writer w;
+	private final String indent;
+	private final int grid;
+	private final char[] digits = new char[48];
+
+	// a null indent writes everything on one line
+	public JsonFormatter(Writer w, String indent){
+		this(w, indent, 0);
+	}
+
+	// with a grid, geometry that's within rounding of a 1/grid step is written as that step, and whole numbers
+	// without a fraction. with 0 it's written as it was, whole numbers only without one if they were in the input
+	public JsonFormatter(Writer w, String indent, int grid){
+		this.w = w;
+		this.indent = indent;
+		this.grid = grid;
+	}
+
+	// open objects and arrays of the incremental api, innermost last
+	private final Deque<Frame> frames = new ArrayDeque<>();
+
+	public void write(JsonElement tree) throws IOException {
+
+		value(tree, 0);
+		w.flush();
+	}
+
+	public void write(Model m) throws IOException {
+
+		beginObject();
+
+		int k = 0;
+
+		for(Entry<String, JsonElement> member : m.members.entrySet()){
+
+			if(k++ == m.elementsAt)
+				elements(m);
+
+			member(member.getKey(), member.getValue());
+		}
+
+		if(k == m.elementsAt)
+			elements(m);
+
+		end();
+	}
+
+	private void elements(Model m) throws IOException {
+
+		beginArray("elements");
+
+		for(int i = 0; i < m.size; i++)
+			element(m, i);
+
+		end();
+	}
+
+	public void beginObject() throws IOException {
+
+		open('{', '}');
+	}
+
+	public void beginArray(String key) throws IOException {
+
+		separate();
+		string(key);
+		w.write(": ");
+		open('[', ']');
+	}
+
+	public void member(String key, JsonElement value) throws IOException {
+
+		if(value.isJsonNull())
+			return;
+
+		separate();
+		member(key, value, frames.size());
+	}
+
+	public void element(JsonElement value) throws IOException {
+
+		separate();
+		value(value, frames.size());
+	}
+
+	// writes element i of m the way write(JsonElement) would write it as json
+	public void element(Model m, int i) throws IOException {
+
+		separate();
+		element(m, i, frames.size());
+	}
+
+	// splices in a fragment written at this depth as the next member or element
+	public void raw(String fragment) throws IOException {
+
+		separate();
+		w.write(fragment);
+	}
+
+	// writes m's elements as elements(m) would inside depth open objects and arrays, less the brackets, for raw()
+	public void fragment(Model m, int depth) throws IOException {
+
+		for(int i = 0; i < m.size; i++){
+
+			if(i > 0){
+				w.write(',');
+				newline(depth);
+			}
+
+			element(m, i, depth);
+		}
+	}
+
+	// writes a member as member(key, value) would inside depth open objects and arrays, for raw()
+	public void fragment(String key, JsonElement value, int depth) throws IOException {
+
+		member(key, value, depth);
+	}
+
+	private void element(Model m, int i, int depth) throws IOException {
+
+		boolean first = true;
+		int written = 0;
+
+		Iterator<Entry<String, JsonElement>> extra = m.extra[i] == null ? Collections.emptyIterator() : m.extra[i].entrySet().iterator();
+
+		for(long o = m.order[i]; o != 0; o >>>= 4){
+
+			int id = (int) (o & 0xf);
+
+			if(id == Model.EXTRA){
+
+				if(!extra.hasNext())
+					continue;
+
+				Entry<String, JsonElement> e = extra.next();
+
+				if(e.getValue().isJsonNull())
+					continue;
+
+				first = next(first, depth);
+				member(e.getKey(), e.getValue(), depth + 1);
+				continue;
+			}
+
+			first = elementMember(m, i, id, first, depth);
+			written |= 1 << id;
+		}
+
+		// anything that didn't fit in the recorded order
+		for(int id = Model.FROM; id < Model.EXTRA; id++){
+
+			if((written & 1 << id) == 0)
+				first = elementMember(m, i, id, first, depth);
+		}
+
+		while(extra.hasNext()){
+
+			Entry<String, JsonElement> e = extra.next();
+
+			if(e.getValue().isJsonNull())
+				continue;
+
+			first = next(first, depth);
+			member(e.getKey(), e.getValue(), depth + 1);
+		}
+
+		if(first){
+			w.write("{}");
+			return;
+		}
+
+		newline(depth);
+		w.write('}');
+	}
+
+	// starts the next member of an object at depth
+	private boolean next(boolean first, int depth) throws IOException {
+
+		w.write(first ? "{" : ",");
+		newline(depth + 1);
+
+		return false;
+	}
+
+	private boolean elementMember(Model m, int i, int id, boolean first, int depth) throws IOException {
+
+		int flags = m.flags[i];
+
+		switch(id) {
+
+		case Model.FROM: case Model.TO: {
+
+			boolean from = id == Model.FROM;
+
+			if(!m.has(i, from ? Model.HAS_FROM : Model.HAS_TO))
+				return first;
+
+			next(first, depth);
+			string(from ? "from" : "to");
+			w.write(": ");
+			vector(from ? m.from : m.to, 3 * i, 3, flags >> (from ? Model.FROM_INTS : Model.TO_INTS));
+
+		} return false;
+
+		case Model.ROTATION: {
+
+			if(!m.has(i, Model.HAS_ROTATION))
+				return first;
+
+			next(first, depth);
+			string("rotation");
+			w.write(": ");
+
+			JsonObject extra = m.rotationExtra[i];
+			boolean f = true;
+
+			if(m.has(i, Model.HAS_ORIGIN)){
+				w.write("{ ");
+				string("origin");
+				w.write(": ");
+				vector(m.origin, 3 * i, 3, flags >> Model.ORIGIN_INTS);
+				f = false;
+			} else if(extra != null && extra.get("origin") != null){
+				f = compactMember("origin", extra.get("origin"), f);
+			}
+
+			if(m.axis[i] != null){
+				w.write(f ? "{ " : ", ");
+				string("axis");
+				w.write(": ");
+				string(m.axis[i]);
+				f = false;
+			} else if(extra != null && extra.get("axis") != null){
+				f = compactMember("axis", extra.get("axis"), f);
+			}
+
+			if(m.has(i, Model.HAS_ANGLE)){
+				w.write(f ? "{ " : ", ");
+				string("angle");
+				w.write(": ");
+				number(m.angle[i], (flags & Model.ANGLE_INT) != 0);
+				f = false;
+			} else if(extra != null && extra.get("angle") != null){
+				f = compactMember("angle", extra.get("angle"), f);
+			}
+
+			if(extra != null){
+				for(Entry<String, JsonElement> e : extra.entrySet()){
+					if(!rotationKeys.contains(e.getKey()))
+						f = compactMember(e.getKey(), e.getValue(), f);
+				}
+			}
+
+			w.write(f ? "{ }" : " }");
+
+		} return false;
+
+		case Model.FACES_: {
+
+			if(!m.has(i, Model.HAS_FACES))
+				return first;
+
+			next(first, depth);
+			string("faces");
+			w.write(": ");
+			faces(m, i, depth + 1);
+
+		} return false;
+
+		default: return first;
+		}
+	}
+
+	private void faces(Model m, int i, int depth) throws IOException {
+
+		boolean first = true;
+		Iterator<Entry<String, JsonElement>> other = m.otherFaces[i] == null ? Collections.emptyIterator() : m.otherFaces[i].entrySet().iterator();
+
+		for(long o = m.faceOrder[i]; o != 0; o >>>= 4){
+
+			int id = (int) (o & 0xf);
+
+			if(id == Model.OTHER){
+
+				if(!other.hasNext())
+					continue;
+
+				Entry<String, JsonElement> e = other.next();
+
+				if(e.getValue().isJsonNull())
+					continue;
+
+				first = next(first, depth);
+				member(e.getKey(), e.getValue(), depth + 1);
+				continue;
+			}
+
+			first = next(first, depth);
+			face(m, 6 * i + id - 1, Model.FACES[id - 1]);
+		}
+
+		while(other.hasNext()){
+
+			Entry<String, JsonElement> e = other.next();
+
+			if(e.getValue().isJsonNull())
+				continue;
+
+			first = next(first, depth);
+			member(e.getKey(), e.getValue(), depth + 1);
+		}
+
+		if(first){
+			w.write("{}");
+			return;
+		}
+
+		newline(depth);
+		w.write('}');
+	}
+
+	private void face(Model m, int k, String name) throws IOException {
+
+		string(name);
+		w.write(':');
+		for(int i = name.length(); i < 6; i++)
+			w.write(' ');
+
+		JsonObject extra = m.faceExtra[k];
+		boolean f = true;
+
+		if((m.faceFlags[k] & Model.HAS_UV) != 0){
+			w.write("{ ");
+			string("uv");
+			w.write(": ");
+			vector(m.uv, 4 * k, 4, m.faceFlags[k]);
+			f = false;
+		} else if(extra != null && extra.get("uv") != null){
+			f = compactMember("uv", extra.get("uv"), f);
+		}
+
+		f = faceString("texture", m.texture[k], extra, f);
+		f = faceString("cullface", m.cullface[k], extra, f);
+		f = faceInt("rotation", m.rotation[k], extra, f);
+		f = faceInt("tintindex", m.tintindex[k], extra, f);
+
+		if(extra != null){
+			for(Entry<String, JsonElement> e : extra.entrySet()){
+				if(!faceKeys.contains(e.getKey()))
+					f = compactMember(e.getKey(), e.getValue(), f);
+			}
+		}
+
+		w.write(f ? "{ }" : " }");
+	}
+
+	private boolean faceString(String key, String value, JsonObject extra, boolean first) throws IOException {
+
+		if(value == null)
+			return extra != null && extra.get(key) != null ? compactMember(key, extra.get(key), first) : first;
+
+		w.write(first ? "{ " : ", ");
+		string(key);
+		w.write(": ");
+		string(value);
+
+		return false;
+	}
+
+	private boolean faceInt(String key, int value, JsonObject extra, boolean first) throws IOException {
+
+		if(value == Model.NONE)
+			return extra != null && extra.get(key) != null ? compactMember(key, extra.get(key), first) : first;
+
+		w.write(first ? "{ " : ", ");
+		string(key);
+		w.write(": ");
+		w.write(Integer.toString(value));
+
+		return false;
+	}
+
+	// ints has a bit set for each value to write without a fraction
+	private void vector(double[] a, int off, int n, int ints) throws IOException {
+
+		w.write("[ ");
+
+		for(int j = 0; j < n; j++){
+
+			if(j > 0)
+				w.write(", ");
+
+			number(a[off + j], (ints & 1 << j) != 0);
+		}
+
+		w.write(" ]");
+	}
+
+	private void number(double d, boolean integral) throws IOException {
+
+		if(grid > 0){
+
+			double step = Math.rint(d * grid) / grid;
+
+			if(Math.abs(d - step) < SNAP)
+				d = step + 0.0;
+
+			integral = true;
+		}
+
+		if(integral && d == (long) d)
+			w.write(Long.toString((long) d));
+		else
+			decimal(d);
+	}
+
+	// a number with at most MAX_PLACES binary places, like everything on a model's grid, is written exactly as it is.
+	// that's also its shortest form unless it's so big its neighbours are closer than its last digit;
+	// those and the rest go to Double.toString
+	private void decimal(double d) throws IOException {
+
+		double scaled = d;
+		int places = 0;
+
+		while(places < MAX_PLACES && scaled != Math.rint(scaled)){
+			scaled *= 2;
+			places++;
+		}
+
+		if(scaled != Math.rint(scaled) || Math.abs(scaled) >= 1L << 53){
+			w.write(Double.toString(d));
+			return;
+		}
+
+		long k = Math.abs((long) scaled);
+		long whole = k >>> places;
+		// the fraction over 10^places instead of 2^places
+		long fraction = (k & (1L << places) - 1) * POW5[places];
+		// whole numbers too keep one, as Double.toString writes them
+		int decimals = Math.max(places, 1);
+
+		while(decimals > 1 && fraction % 10 == 0){
+			fraction /= 10;
+			decimals--;
+		}
+
+		if(Math.ulp(d) * POW10[decimals] >= 2){
+			w.write(Double.toString(d));
+			return;
+		}
+
+		int at = digits.length;
+
+		for(int n = 0; n < decimals; n++){
+			digits[--at] = (char) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+
+		digits[--at] = '.';
+
+		do {
+			digits[--at] = (char) ('0' + whole % 10);
+			whole /= 10;
+		} while(whole != 0);
+
+		// -0.0 included
+		if(Double.doubleToRawLongBits(d) < 0)
+			digits[--at] = '-';
+
+		w.write(digits, at, digits.length - at);
+	}
+
+	public void end() throws IOException {
+
+		Frame f = frames.pop();
+
+		if(f.first){
+			w.write(f.open);
+		} else {
+			newline(frames.size());
+		}
+
+		w.write(f.close);
+
+		if(frames.isEmpty())
+			w.flush();
+	}
+
+	private void open(char open, char close) {
+
+		frames.push(new Frame(open, close));
+	}
+
+	private void separate() throws IOException {
+
+		Frame f = frames.peek();
+
+		w.write(f.first ? f.open : ',');
+		f.first = false;
+
+		newline(frames.size());
+	}
+
+	private void value(JsonElement e, int depth) throws IOException {
+
+		if(e.isJsonObject()){
+
+			boolean first = true;
+
+			for(Entry<String, JsonElement> member : e.getAsJsonObject().entrySet()){
+
+				// like gson, null members are left out entirely
+				if(member.getValue().isJsonNull())
+					continue;
+
+				w.write(first ? "{" : ",");
+				first = false;
+
+				newline(depth + 1);
+				member(member.getKey(), member.getValue(), depth + 1);
+			}
+
+			if(first){
+				w.write("{}");
+				return;
+			}
+
+			newline(depth);
+			w.write('}');
+
+		} else if(e.isJsonArray()){
+
+			JsonArray arr = e.getAsJsonArray();
+
+			if(arr.size() == 0){
+				w.write("[]");
+				return;
+			}
+
+			w.write('[');
+
+			for(int i = 0; i < arr.size(); i++){
+
+				newline(depth + 1);
+				value(arr.get(i), depth + 1);
+
+				if(i < arr.size() - 1)
+					w.write(',');
+			}
+
+			newline(depth);
+			w.write(']');
+
+		} else {
+
+			primitive(e);
+		}
+	}
+
+	private void member(String key, JsonElement value, int depth) throws IOException {
+
+		string(key);
+
+		if(faces.contains(key) && value.isJsonObject()){
+
+			w.write(':');
+			for(int i = key.length(); i < 6; i++)
+				w.write(' ');
+
+			compactObject(value.getAsJsonObject(), faceKeys);
+			return;
+		}
+
+		w.write(": ");
+
+		if(key.equals("rotation") && value.isJsonObject()){
+
+			compactObject(value.getAsJsonObject(), rotationKeys);
+
+		} else if(coords.contains(key) && isFlat(value, 3)){
+
+			compact(value);
+
+		} else {
+
+			value(value, depth);
+		}
+	}
+
+	private void compactObject(JsonObject obj, ImmutableList<String> order) throws IOException {
+
+		boolean first = true;
+
+		for(String key : order){
+
+			JsonElement value = obj.get(key);
+			if(value == null)
+				continue;
+
+			first = compactMember(key, value, first);
+		}
+
+		for(Entry<String, JsonElement> member : obj.entrySet()){
+
+			if(order.contains(member.getKey()))
+				continue;
+
+			first = compactMember(member.getKey(), member.getValue(), first);
+		}
+
+		w.write(first ? "{ }" : " }");
+	}
+
+	private boolean compactMember(String key, JsonElement value, boolean first) throws IOException {
+
+		if(value.isJsonNull())
+			return first;
+
+		w.write(first ? "{ " : ", ");
+
+		string(key);
+		w.write(": ");
+		compact(value);
+
+		return false;
+	}
+
+	private void compact(JsonElement e) throws IOException {
+
+		if(e.isJsonObject()){
+
+			boolean first = true;
+			for(Entry<String, JsonElement> member : e.getAsJsonObject().entrySet())
+				first = compactMember(member.getKey(), member.getValue(), first);
+
+			w.write(first ? "{}" : " }");
+
+		} else if(e.isJsonArray()){
+
+			JsonArray arr = e.getAsJsonArray();
+
+			if(arr.size() == 0){
+				w.write("[]");
+				return;
+			}
+
+			w.write("[ ");
+
+			for(int i = 0; i < arr.size(); i++){
+
+				if(i > 0)
+					w.write(", ");
+
+				compact(arr.get(i));
+			}
+
+			w.write(" ]");
+
+		} else {
+
+			primitive(e);
+		}
+	}
+
+	private void primitive(JsonElement e) throws IOException {
+
+		if(e.isJsonNull()){
+			w.write("null");
+			return;
+		}
+
+		JsonPrimitive p = e.getAsJsonPrimitive();
+
+		if(p.isString())
+			string(p.getAsString());
+		else if(p.isBoolean())
+			w.write(p.getAsBoolean() ? "true" : "false");
+		else
+			w.write(p.getAsNumber().toString());
+	}
+
+	private void string(String s) throws IOException {
+
+		w.write('"');
+
+		int last = 0;
+		int length = s.length();
+
+		for(int i = 0; i < length; i++){
+
+			char c = s.charAt(i);
+			String replacement;
+
+			if(c < 0x20){
+				switch(c){
+				case '\t': replacement = "\\t"; break;
+				case '\b': replacement = "\\b"; break;
+				case '\n': replacement = "\\n"; break;
+				case '\r': replacement = "\\r"; break;
+				case '\f': replacement = "\\f"; break;
+				default: replacement = String.format("\\u%04x", (int) c); break;
+				}
+			} else if(c == '"'){
+				replacement = "\\\"";
+			} else if(c == '\\'){
+				replacement = "\\\\";
+			} else if(c == '\u2028'){
+				replacement = "\\u2028";
+			} else if(c == '\u2029'){
+				replacement = "\\u2029";
+			} else {
+				continue;
+			}
+
+			if(last < i)
+				w.write(s, last, i - last);
+
+			w.write(replacement);
+			last = i + 1;
+		}
+
+		if(last < length)
+			w.write(s, last, length - last);
+
+		w.write('"');
+	}
+
+	private void newline(int depth) throws IOException {
+
+		if(indent == null)
+			return;
+
+		w.write('\n');
+		for(int i = 0; i < depth; i++)
+			w.write(indent);
+	}
+
+	private static boolean isFlat(JsonElement e, int size) {
+
+		if(!e.isJsonArray() || e.getAsJsonArray().size() != size)
+			return false;
+
+		for(JsonElement el : e.getAsJsonArray()){
+			if(!el.isJsonPrimitive())
+				return false;
+		}
+
+		return true;
+	}
+
+	private static class Frame {
+
+		final char open, close;
+		boolean first = true;
+
+		Frame(char open, char close){
+			this.open = open;
+			this.close = close;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.xorinc.modeltools;
+
+import java.util.function.Supplier;
+
+
+// Diagnostics go through here so messages are only built when their level is on.
+// Hot loops should check enabled() once and skip building anything, suppliers are fine elsewhere.
+public final class Log {
+
+	public enum Level {
+
+		OFF,
+		// one line per file or stage
+		INFO,
+		// whole trees and variants
+		DEBUG,
+		// every element and face
+		TRACE;
+	}
+
+	private static volatile Level level = Level.OFF;
+
+	private Log(){}
+
+	public static void level(Level l) {
+
+		level = l;
+	}
+
+	public static boolean enabled(Level l) {
+
+		return l != Level.OFF && l.compareTo(level) <= 0;
+	}
+
+	public static void info(Supplier<?> msg) {
+
+		log(Level.INFO, msg);
+	}
+
+	public static void debug(Supplier<?> msg) {
+
+		log(Level.DEBUG, msg);
+	}
+
+	public static void trace(Supplier<?> msg) {
+
+		log(Level.TRACE, msg);
+	}
+
+	// for callers that already checked enabled()
+	public static void print(Object msg) {
+
+		Main.out.println(msg);
+	}
+
+	private static void log(Level l, Supplier<?> msg) {
+
+		if(enabled(l))
+			print(msg.get());
+	}
+}
@@ -1,18 +1,38 @@
 package com.xorinc.modeltools;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -25,6 +45,8 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.stream.JsonWriter;
 import com.xorinc.modeltools.tools.Combine;
+import com.xorinc.modeltools.tools.Optimize;
+import com.xorinc.modeltools.tools.Pipeline;
 import com.xorinc.modeltools.tools.Resize;
 import com.xorinc.modeltools.tools.ResizeItem;
 import com.xorinc.modeltools.tools.Rotate;
@@ -41,88 +63,275 @@ import joptsimple.ValueConversionException;
 
 public class Main {
 
-	private static boolean verbose;
+	private static boolean streaming;
+	private static int shard, shards;
+	private static long maxVariants;
 	
 	private static Gson gson;
 	private static String indent;
+	private static int grid;
 	
-	public static File currentIn, currentOut;
+	public static PrintStream out = System.out, err = System.err;
+	private static File cwd;
 	
 	public static void main(String... args) throws Throwable{
 		
-		if(System.in.available() > 0) {
+		// unless stdin is where the models come from
+		boolean stdin = Arrays.asList(args).contains("-") || Arrays.asList(args).contains("--ndjson");
+		
+		if(!stdin && System.in.available() > 0) {
 			List<String> pipe = new BufferedReader(new InputStreamReader(System.in)).lines().collect(Collectors.toList());
 			
 			args = ArrayUtils.addAll(args, pipe.toArray(new String[pipe.size()]));
 		}
 		
+		int status = run(null, System.out, System.err, args);
+		
+		if(status != 0)
+			System.exit(status);
+	}
+	
+	public static synchronized int run(File dir, PrintStream stdout, PrintStream stderr, String... args) throws Throwable{
+		
+		cwd = dir;
+		out = stdout;
+		err = stderr;
+		
+		try {
+			return run(args);
+		} finally {
+			out.flush();
+			err.flush();
+		}
+	}
+	
+	private static int run(String... args) throws Throwable{
+		
 		OptionParser parser = new OptionParser();
 		OptionSpec<Void> help = parser.acceptsAll(Arrays.asList("?", "help"), "Prints this message.").forHelp();
-		OptionSpec<Void> verboseOpt = parser.acceptsAll(Arrays.asList("v", "verbose"), "Verbose output.");
+		OptionSpec<Void> verboseOpt = parser.acceptsAll(Arrays.asList("v", "verbose"), "Verbose output, same as --log trace.");
+		OptionSpec<String> logOpt = parser.accepts("log", "Log level: off, info, debug or trace.").withRequiredArg().defaultsTo("off");
 		OptionSpec<String> suffix = parser.acceptsAll(Arrays.asList("s", "suffix"), "Suffix for output.").withRequiredArg();
 		OptionSpec<File> output = parser.acceptsAll(Arrays.asList("o", "out", "output"), "Output file.").withRequiredArg().ofType(File.class);
-		// TODO OptionSpec<?> recurse = parser.acceptsAll(Arrays.asList("r", "recursive"), "Applies the tool to all directories recursively.");
-		OptionSpec<String> toolArg = parser.acceptsAll(Arrays.asList("t", "tool"), "The tool to use (required).").withRequiredArg();
-		OptionSpec<String> toolOpt = parser.acceptsAll(Arrays.asList("opt", "toolOptions"), "Options for a tool.").withRequiredArg();
+		OptionSpec<Void> recurse = parser.acceptsAll(Arrays.asList("r", "recursive"), "Applies the tool to all directories recursively.");
+		OptionSpec<String> include = parser.accepts("include", "Glob of files to process when recursing (default *.json). Repeatable.").withRequiredArg();
+		OptionSpec<String> exclude = parser.accepts("exclude", "Glob of files to skip when recursing. Repeatable.").withRequiredArg();
+		OptionSpec<String> toolArg = parser.acceptsAll(Arrays.asList("t", "tool"), "The tool to use, or a comma separated list of tools to apply in order (required).").withRequiredArg();
+		OptionSpec<String> toolOpt = parser.acceptsAll(Arrays.asList("opt", "toolOptions"), "Options for a tool. Repeat once per tool when using several.").withRequiredArg();
+		OptionSpec<File> pipelineArg = parser.acceptsAll(Arrays.asList("p", "pipeline"), "File listing one `<tool> [options]' per line, used instead of -t.").withRequiredArg().ofType(File.class);
+		OptionSpec<Integer> threads = parser.acceptsAll(Arrays.asList("j", "threads"), "Number of files to process in parallel.").withRequiredArg().ofType(Integer.class).defaultsTo(1);
 		OptionSpec<String> indentOpt = parser.acceptsAll(Arrays.asList("i", "indent", "indentation"), "Indentation string.").withRequiredArg().defaultsTo("    ");
-		OptionSpec<File> fileArg = parser.nonOptions("file").ofType(File.class);
+		OptionSpec<Integer> gridOpt = parser.accepts("grid", "Writes geometry within rounding of a 1/n step as that step, and whole numbers without .0. 0 writes numbers as they were read.").withRequiredArg().ofType(Integer.class).defaultsTo(16);
+		OptionSpec<Void> streamOpt = parser.accepts("stream", "Streams models element by element when only geometry tools are used, keeping memory use flat on huge models.");
+		OptionSpec<String> shardOpt = parser.accepts("shard", "Only writes part i of n of combine's variants, e.g. 2/4, so separate runs can split the work.").withRequiredArg().defaultsTo("1/1");
+		OptionSpec<Long> maxOpt = parser.accepts("max-variants", "Fails before writing anything when combine would write more variants than this.").withRequiredArg().ofType(Long.class).defaultsTo(10000L);
+		OptionSpec<Void> flattenOpt = parser.accepts("flatten", "Inlines `parent' models first, so tools work on models that inherit their elements.");
+		OptionSpec<File> assetsOpt = parser.accepts("assets", "The assets directory parents are found in, by default the one each input is in.").withRequiredArg().ofType(File.class);
+		OptionSpec<File> indexOpt = parser.accepts("index", "Binary index of every model found, kept in this file and updated from mtimes. Without a tool, only updates it.").withRequiredArg().ofType(File.class);
+		OptionSpec<String> queryOpt = parser.accepts("query", "Only processes models whose index entry matches, e.g. \"path=**/item/** display=gui\". Terms are path, parent, texture, display and elements (=, <, >, <=, >=). Needs --index.").withRequiredArg();
+		OptionSpec<Long> watchOpt = parser.accepts("watch", "Keeps running and redoes files as they change. The value is how many ms to wait out a burst of changes.").withOptionalArg().ofType(Long.class).defaultsTo(50L);
+		OptionSpec<Void> ndjsonOpt = parser.accepts("ndjson", "Reads one model per line from stdin and writes each result on one line to stdout, instead of files.");
+		OptionSpec<File> cacheOpt = parser.accepts("cache", "File recording previous runs; inputs whose output is already current are skipped.").withRequiredArg().ofType(File.class);
+		OptionSpec<Integer> serve = parser.accepts("serve", "Stays running and serves invocations from Client on a loopback port.").withOptionalArg().ofType(Integer.class).defaultsTo(Server.DEFAULT_PORT);
+		OptionSpec<File> fileArg = parser.nonOptions("file, or - to read stdin and write stdout").ofType(File.class);
 		
-		OptionSet options = null;
+		OptionSet parsed = null;
 		
 		try{
-			options = parser.parse(args);
+			parsed = parser.parse(args);
 		} catch (OptionException ignore) {}
 		
-		if(options == null || options.has(help) || !options.has(toolArg)){
+		OptionSet options = parsed;
+		
+		if(options != null && options.has(serve)){
+			
+			if(cwd != null){
+				err.println("--serve can't be used through the server.");
+				return 1;
+			}
+			
+			Server.serve(serve.value(options));
+			return 0;
+		}
+		
+		if(options == null || options.has(help) || !(options.has(toolArg) || options.has(pipelineArg) || options.has(indexOpt))){
 			
 			try {
-				parser.printHelpOn(System.out);
+				parser.printHelpOn(out);
 			}
 			catch (IOException e) {
-				System.err.println("Error printing help!");
-				e.printStackTrace();
+				err.println("Error printing help!");
+				e.printStackTrace(err);
 			}
-			return;
+			return options == null ? 1 : 0;
+		}
+		
+		try {
+			Log.level(options.has(verboseOpt) ? Log.Level.TRACE : Log.Level.valueOf(logOpt.value(options).toUpperCase()));
+			
+		} catch (IllegalArgumentException e){
+			
+			err.println("No such log level: " + logOpt.value(options));
+			return 1;
+		}
+		try {
+			String[] sh = shardOpt.value(options).split("/");
+			shard = Integer.parseInt(sh[0]);
+			shards = Integer.parseInt(sh[1]);
+			
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e){
+			shard = 0;
 		}
 		
-		verbose = options.has(verboseOpt);
+		if(shard < 1 || shard > shards){
+			
+			err.println("Shard must be i/n with 1 <= i <= n: " + shardOpt.value(options));
+			return 1;
+		}
+		
+		if(options.has(queryOpt) && !options.has(indexOpt)){
+			
+			err.println("--query needs --index.");
+			return 1;
+		}
+		
+		if(options.has(watchOpt) && cwd != null){
+			
+			err.println("--watch can't be used through the server.");
+			return 1;
+		}
+		
+		if(options.has(watchOpt) && !options.has(suffix) && !options.has(output)){
+			
+			err.println("--watch needs -s or -o, rewriting inputs in place would set it off again.");
+			return 1;
+		}
+		
+		Predicate<PackIndex.Indexed> query;
+		
+		try {
+			query = options.has(queryOpt) ? PackIndex.query(queryOpt.value(options)) : null;
+			
+		} catch (IllegalArgumentException e){
+			
+			err.println(e.getMessage());
+			return 1;
+		}
+		
+		boolean stdio = options.has(ndjsonOpt) || fileArg.values(options).contains(new File("-"));
+		
+		if(stdio && cwd != null){
+			
+			err.println("stdin can't be read through the server.");
+			return 1;
+		}
+		
+		// stdout is for models then, everything else goes to stderr
+		if(stdio)
+			out = err;
+		
+		streaming = options.has(streamOpt);
+		maxVariants = maxOpt.value(options);
 		gson = new GsonBuilder().setPrettyPrinting().create();
 		indent = indentOpt.value(options);
+		grid = gridOpt.value(options);
+		
+		if(grid < 0){
+			
+			err.println("--grid can't be negative.");
+			return 1;
+		}
 		
 		
-		Tool<? extends Tool<?>> t;
-		Args<? extends Tool<?>> a = null;
+		List<String[]> spec = new ArrayList<>();
 		
-		switch(toolArg.value(options).toLowerCase()) {
+		if(options.has(pipelineArg)){
+			
+			for(String line : Files.readAllLines(resolve(pipelineArg.value(options)).toPath())){
+				
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				
+				spec.add(line.split("\\s+", 2));
+			}
+		} else if(options.has(toolArg)){
+			
+			Iterator<String> opts = toolOpt.values(options).iterator();
+			
+			for(String name : toolArg.value(options).split(",")){
+				
+				Tool<?> t = tool(name);
+				spec.add(new String[] { name, t != null && t.getParser() != null && opts.hasNext() ? opts.next() : null });
+			}
+		}
 		
-		case "resize": t = Resize.inst; break;
-		case "resizeitem": t = ResizeItem.inst; break;
-		case "combine": t = Combine.inst; break;
-		case "rotate": t = Rotate.inst; break;
-		case "translate": t = Translate.inst; break;
+		List<Pipeline.Stage> stages = new ArrayList<>();
 		
-		default: 
-			System.err.printf("Tool %s does not exist!", toolArg.value(options).toLowerCase());
-			return;
+		for(String[] stage : spec){
+			
+			Tool<?> t = tool(stage[0]);
+			Args<?> a = null;
+			
+			if(t == null){
+				err.printf("Tool %s does not exist!", stage[0].toLowerCase());
+				return 1;
+			}
+			
+			if(t.getParser() != null && (stage.length < 2 || stage[1] == null))
+				throw new ValueConversionException("Tool requires option: " + t.getParser().valuePattern());
+			
+			try {
+				if(t.getParser() != null)
+					a = t.getParser().convert(stage[1]);
+				
+			} catch (ValueConversionException e){
+				
+				err.println(e.getMessage());
+				return 1;
+			}
+			
+			stages.add(new Pipeline.Stage(t, a));
 		}
 		
-		if(t.getParser() != null && !options.has(toolOpt))
-			throw new ValueConversionException("Tool requires option: " + t.getParser().valuePattern());
+		Tool<?> t;
+		Args<?> a;
 		
 		try {
-			if(t.getParser() != null)
-				a = (Args<? extends Tool<?>>) t.getParser().convert(toolOpt.value(options));
-			
+			if(stages.isEmpty()){
+				// only indexing
+				t = null;
+				a = null;
+			} else if(stages.size() == 1){
+				t = stages.get(0).tool;
+				a = stages.get(0).args;
+			} else {
+				t = Pipeline.inst;
+				a = new Pipeline.Args(stages);
+			}
 		} catch (ValueConversionException e){
 			
-			System.err.println(e.getMessage());
-			return;
+			err.println(e.getMessage());
+			return 1;
 		}
 		
-		for (File in : fileArg.values(options)){
-			verbose(in);
+		// one resolver per assets directory, shared by everything in it
+		Map<Path, ParentResolver> resolvers = new HashMap<>();
+		Function<File, ParentResolver> parents = in -> {
+			
+			Path assets = options.has(assetsOpt) ? resolve(assetsOpt.value(options)).toPath() : ParentResolver.assetsOf(in.toPath());
+			
+			if(assets == null){
+				Log.info(() -> String.format("`%s' isn't in an assets directory, its parents are left alone", in));
+				return null;
+			}
+			
+			return resolvers.computeIfAbsent(assets.toAbsolutePath(), ParentResolver::new);
+		};
+		
+		BiFunction<File, Path, Context> job = (in, rel) -> {
+			
 			File out;
-			File temp = File.createTempFile(".ModelToolstemp", "", in.getParentFile());
 			
 			if(options.has(suffix)){
 				String su = suffix.value(options);
@@ -130,39 +339,302 @@ public class Main {
 				String ext = FileUtils.getExtension(name);
 				name = FileUtils.removeExtension(name);
 				out = new File(in.getParent(), name + su + "." + ext);
+			} else if(options.has(output) && rel != null){
+				out = new File(resolve(output.value(options)), rel.toString());
+				out.getParentFile().mkdirs();
 			} else if(options.has(output)){
-				out = output.value(options);
+				out = resolve(output.value(options));
 			} else {
 				out = in;
 			}
 			
-			currentIn = in;
-			currentOut = out;
+			return new Context(in, out, options.has(flattenOpt) ? parents.apply(in) : null);
+		};
+		
+		List<Predicate<Path>> includes = matchers(options.has(include) ? include.values(options) : Arrays.asList("*.json"));
+		List<Predicate<Path>> excludes = matchers(exclude.values(options));
+		
+		// outputs written next to their inputs must not be picked up again by the walk
+		Set<File> outputs = new HashSet<>();
+		
+		BuildCache cache = options.has(cacheOpt) ? BuildCache.load(resolve(cacheOpt.value(options))) : null;
+		
+		// outputs would depend on files the cache doesn't know about
+		if(cache != null && options.has(flattenOpt)){
+			err.println("--cache doesn't track parent models and is ignored with --flatten.");
+			cache = null;
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		boolean multifile = t != null && ((Tool) t).multifile((Args) a);
+		
+		if(stdio && (t == null || multifile)){
+			
+			err.println(t == null ? "Reading stdin needs a tool." : "Tools that write their own files can't read stdin.");
+			return 1;
+		}
+		
+		if(options.has(ndjsonOpt)){
+			
+			if(!fileArg.values(options).isEmpty()){
+				
+				err.println("--ndjson reads stdin, it takes no files.");
+				return 1;
+			}
+			
+			// compact, one model per line
+			indent = null;
+			
+			return ndjson(t, a, new Context(null, null, options.has(flattenOpt) ? parents.apply(new File("-")) : null)) ? 0 : 1;
+		}
+		
+		PackIndex index = options.has(indexOpt) ? PackIndex.load(resolve(indexOpt.value(options))) : null;
+		
+		try(Batch batch = new Batch(t, a, threads.value(options), cache, indent + "\0" + grid)){
 			
-			try(InputStream is = new FileInputStream(in); OutputStream os = new FileOutputStream(temp)){
+			// with an index, files are indexed as they're found, and only the ones matching the query go to the tool
+			Predicate<File> selected = in -> {
+				
+				if(index == null)
+					return true;
+				
+				try {
+					PackIndex.Indexed e = index.update(in.toPath());
+					return t != null && (query == null || query.test(e));
+					
+				} catch (IOException e) {
 					
-				t.execute(is, os, (Args) a);
+					err.printf("Error reading `%s'! %s%n", in, e.getMessage());
+					batch.fail();
+					return false;
+				}
+			};
+			
+			// what a walk does with each file it finds under root
+			BiConsumer<Path, Path> visit = (root, file) -> {
 				
-				out.delete();
-				out.createNewFile();
-				FileUtils.copyFile(temp, out);
+				Path rel = root.relativize(file);
 				
-			} catch (ToolException e) {
+				if(includes.stream().anyMatch(m -> m.test(rel)) && excludes.stream().noneMatch(m -> m.test(rel))
+						&& !outputs.contains(file.toFile().getAbsoluteFile()) && selected.test(file.toFile())){
+					
+					Context ctx = job.apply(file.toFile(), rel);
+					outputs.add(ctx.out.getAbsoluteFile());
+					batch.submit(ctx);
+				}
+			};
+			
+			for (File f : fileArg.values(options)){
 				
-				System.err.printf("Error executing on file `%s'!", in.getName());
-				System.err.println(e.getMessage());
+				if(f.getPath().equals("-")){
+					
+					if(!stdin(t, a, new Context(null, null, options.has(flattenOpt) ? parents.apply(f) : null)))
+						batch.fail();
+					continue;
+				}
+				
+				File in = resolve(f);
+				
+				if(!in.isDirectory() && Archive.accepts(in)){
+					
+					// archives aren't indexed, a query doesn't select within them
+					if(t == null)
+						continue;
+					
+					if(!new Archive(t, a, threads.value(options), options.has(flattenOpt)).process(job.apply(in, null)))
+						batch.fail();
+					continue;
+				}
+				
+				if(!in.isDirectory()){
+					
+					if(selected.test(in))
+						batch.submit(job.apply(in, null));
+					continue;
+				}
+				
+				if(!options.has(recurse)){
+					
+					err.printf("`%s' is a directory, use -r to process it%n", f);
+					batch.fail();
+					continue;
+				}
+				
+				Path root = in.toPath();
+				
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>(){
+					
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						
+						if(attrs.isRegularFile())
+							visit.accept(root, file);
+						
+						return FileVisitResult.CONTINUE;
+					}
+					
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						
+						err.printf("Error reading `%s'! %s%n", file, e.getMessage());
+						batch.fail();
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+			
+			boolean ok = batch.finish();
+			
+			if(index != null){
+				index.save();
+				Log.info(() -> index.size() + " models in " + indexOpt.value(options));
+			}
+			
+			if(!options.has(watchOpt))
+				return ok ? 0 : 1;
+			
+			// the same batch, caches and warmed up jvm do every later round
+			try(Watcher watcher = new Watcher(watchOpt.value(options), options.has(recurse))){
 				
-			} catch (Exception e) {
+				for(File f : fileArg.values(options))
+					watcher.register(resolve(f).toPath());
 				
-				System.err.println("Error applying tool!");
-				e.printStackTrace();
-			}			
+				out.println("Watching for changes, ^C to stop.");
+				
+				watcher.run(changed -> {
+					
+					long start = System.nanoTime();
+					
+					// a changed parent makes everything resolved from it stale
+					resolvers.keySet().removeIf(assets -> changed.keySet().stream().anyMatch(p -> p.startsWith(assets)));
+					
+					for(Map.Entry<Path, Path> e : changed.entrySet()){
+						
+						File in = e.getKey().toFile();
+						
+						if(e.getValue() != null){
+							visit.accept(e.getValue(), e.getKey());
+						} else if(Archive.accepts(in)){
+							if(t != null && !new Archive(t, a, threads.value(options), options.has(flattenOpt)).process(job.apply(in, null)))
+								batch.fail();
+						} else if(selected.test(in)){
+							batch.submit(job.apply(in, null));
+						}
+					}
+					
+					batch.finish();
+					
+					if(index != null)
+						index.save();
+					
+					Log.info(() -> String.format("done in %d ms", (System.nanoTime() - start) / 1000000));
+				});
+			}
+			
+			return ok ? 0 : 1;
 		}
 	}
 	
-	public static void verbose(Object o){
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean stdin(Tool tool, Args args, Context ctx) throws IOException {
+		
+		// closing what the tool wrote to mustn't close stdout
+		OutputStream os = new FilterOutputStream(new FileOutputStream(FileDescriptor.out)){
+			
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				
+				out.write(b, off, len);
+			}
+			
+			@Override
+			public void close() throws IOException {
+				
+				flush();
+			}
+		};
 		
-		if(verbose) System.out.println(o);
+		try {
+			tool.execute(System.in, os, args, ctx);
+			return true;
+			
+		} catch (ToolException e) {
+			
+			err.println("Error executing on stdin! " + e.getMessage());
+			return false;
+		}
+	}
+	
+	// one model per line in and out, so a generator can feed a single process instead of starting one per model
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean ndjson(Tool tool, Args args, Context ctx) throws IOException {
+		
+		BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+		// a model that fails half way through mustn't leave half a line
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		boolean ok = true;
+		int n = 0;
+		
+		for(String line; (line = r.readLine()) != null; ){
+			
+			n++;
+			
+			if(line.trim().isEmpty())
+				continue;
+			
+			buf.reset();
+			
+			try {
+				tool.execute(new ByteArrayInputStream(line.getBytes()), buf, args, ctx);
+				buf.write('\n');
+				buf.writeTo(os);
+				
+			} catch (ToolException e) {
+				
+				err.printf("Error executing on line %d! %s%n", n, e.getMessage());
+				ok = false;
+			}
+			
+			// whoever is waiting for this line gets it before we block on the next one
+			if(!r.ready())
+				os.flush();
+		}
+		
+		os.flush();
+		return ok;
+	}
+	
+	// globs with a `/' match the path relative to the walked directory, others just the file name
+	private static List<Predicate<Path>> matchers(List<String> globs){
+		
+		return globs.stream().map(g -> {
+			
+			PathMatcher m = FileSystems.getDefault().getPathMatcher("glob:" + g);
+			
+			return g.contains("/") ? (Predicate<Path>) m::matches : (Predicate<Path>) p -> m.matches(p.getFileName());
+			
+		}).collect(Collectors.toList());
+	}
+	
+	public static Tool<?> tool(String name){
+		
+		switch(name.toLowerCase()) {
+		
+		case "resize": return Resize.inst;
+		case "resizeitem": return ResizeItem.inst;
+		case "combine": return Combine.inst;
+		case "rotate": return Rotate.inst;
+		case "translate": return Translate.inst;
+		case "optimize": return Optimize.inst;
+		
+		default: return null;
+		}
+	}
+	
+	public static File resolve(File f){
+		
+		return cwd == null || f.isAbsolute() ? f : new File(cwd, f.getPath());
 	}
 	
 	public static void write(JsonElement tree, Writer w){
@@ -179,9 +651,45 @@ public class Main {
 		return w.toString();
 	}
 	
-	public static void writeFormatted(JsonElement tree, Writer w) throws IOException{
+	// 1 based, as given on the command line
+	public static int shard(){
+		
+		return shard;
+	}
+	
+	public static int shards(){
+		
+		return shards;
+	}
+	
+	public static long maxVariants(){
+		
+		return maxVariants;
+	}
+	
+	public static String indent(){
+		
+		return indent;
+	}
+	
+	public static int grid(){
+		
+		return grid;
+	}
+	
+	public static boolean streaming(){
+		
+		return streaming;
+	}
+	
+	public static JsonFormatter formatter(Writer w){
+		
+		return new JsonFormatter(w, indent, grid);
+	}
+	
+	public static void writeFormatted(Model model, Writer w) throws IOException{
 		
-		w.append(Util.formatJSON(toJson(tree)));
+		formatter(w).write(model);
 	}
 	
 	public static class ToolException extends Exception {
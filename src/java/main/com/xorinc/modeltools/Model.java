@@ -0,0 +1,719 @@
+package com.xorinc.modeltools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+
+// A model with its elements unpacked into flat arrays, so geometry never goes through gson's boxes.
+// Everything outside the elements, and anything in them that isn't geometry or a plain face, stays as parsed json.
+public final class Model {
+
+	public static final String[] FACES = { "down", "up", "north", "south", "west", "east" };
+	public static final int DOWN = 0, UP = 1, NORTH = 2, SOUTH = 3, WEST = 4, EAST = 5;
+
+	// unset face rotation or tintindex
+	public static final int NONE = Integer.MIN_VALUE;
+
+	// the low bits of an element's flags mark values that were integers in the input and haven't changed since,
+	// so they are written back the same way; from, to and origin take three bits each
+	public static final int FROM_INTS = 0, TO_INTS = 3, ORIGIN_INTS = 6, ANGLE_INT = 1 << 9;
+	public static final int GEOMETRY_INTS = 0x1ff;
+	public static final int HAS_FROM = 1 << 16, HAS_TO = 1 << 17, HAS_ROTATION = 1 << 18, HAS_ORIGIN = 1 << 19, HAS_ANGLE = 1 << 20, HAS_FACES = 1 << 21;
+
+	// same for faces, the low four bits are the uv
+	public static final int HAS_UV = 1 << 4;
+
+	// members of an element in the order they were read, 4 bits each
+	static final int FROM = 1, TO = 2, ROTATION = 3, FACES_ = 4, EXTRA = 5;
+	// faces in the order they were read, 1 + face index or OTHER for the next of otherFaces
+	static final int OTHER = 7;
+
+	private static final int SLOTS = 16;
+
+	// top level members other than the elements
+	public final JsonObject members = new JsonObject();
+	// how many members come before the elements, -1 when there are none
+	public int elementsAt = -1;
+
+	public int size;
+
+	public int[] flags;
+	// three per element
+	public double[] from, to, origin;
+	public double[] angle;
+	public String[] axis;
+	// whatever else an element, its rotation or its faces hold, null when there's nothing
+	public JsonObject[] extra, rotationExtra, otherFaces;
+	long[] order, faceOrder;
+
+	// six per element, indexed element * 6 + face
+	public byte[] faceFlags;
+	// four per face
+	public double[] uv;
+	public String[] texture, cullface;
+	public int[] rotation, tintindex;
+	public JsonObject[] faceExtra;
+
+	private final JsonParser parser = new JsonParser();
+	private final Map<String, String> strings = new HashMap<>();
+
+	// scratch for reading numbers
+	private int ints;
+	private final String[] texts = new String[4];
+
+	public Model(){
+
+		grow(16);
+	}
+
+	public static Model read(Reader in) throws IOException {
+
+		JsonReader r = new JsonReader(in);
+		r.setLenient(true);
+
+		Model m = new Model();
+
+		r.beginObject();
+
+		while(r.hasNext()){
+
+			String name = r.nextName();
+
+			if(name.equals("elements") && m.elementsAt < 0 && r.peek() == JsonToken.BEGIN_ARRAY){
+
+				m.elementsAt = m.members.entrySet().size();
+
+				r.beginArray();
+				while(r.hasNext())
+					m.readElement(r);
+				r.endArray();
+
+			} else {
+
+				m.members.add(name, m.parser.parse(r));
+			}
+		}
+
+		r.endObject();
+
+		return m;
+	}
+
+	public boolean hasElements() {
+
+		return elementsAt >= 0;
+	}
+
+	public boolean has(int i, int flag) {
+
+		return (flags[i] & flag) == flag;
+	}
+
+	// reads one element object and appends it
+	public void readElement(JsonReader r) throws IOException {
+
+		int i = add();
+		int slot = 0;
+
+		r.beginObject();
+
+		while(r.hasNext()){
+
+			String name = r.nextName();
+			int id = EXTRA;
+
+			switch(name) {
+
+			case "from": case "to": {
+
+				boolean isFrom = name.equals("from");
+				JsonElement e = numbers(r, isFrom ? from : to, 3 * i, 3);
+
+				if(e == null){
+					flags[i] |= isFrom ? HAS_FROM | ints << FROM_INTS : HAS_TO | ints << TO_INTS;
+					id = isFrom ? FROM : TO;
+				} else {
+					extra(i).add(name, e);
+				}
+
+			} break;
+
+			case "rotation": {
+
+				if(r.peek() == JsonToken.BEGIN_OBJECT){
+					readRotation(r, i);
+					id = ROTATION;
+				} else {
+					extra(i).add(name, parser.parse(r));
+				}
+
+			} break;
+
+			case "faces": {
+
+				if(r.peek() == JsonToken.BEGIN_OBJECT){
+					readFaces(r, i);
+					id = FACES_;
+				} else {
+					extra(i).add(name, parser.parse(r));
+				}
+
+			} break;
+
+			default: extra(i).add(name, parser.parse(r));
+			}
+
+			if(slot < SLOTS)
+				order[i] |= (long) id << (4 * slot++);
+		}
+
+		r.endObject();
+	}
+
+	private void readRotation(JsonReader r, int i) throws IOException {
+
+		flags[i] |= HAS_ROTATION;
+
+		r.beginObject();
+
+		while(r.hasNext()){
+
+			String name = r.nextName();
+
+			if(name.equals("origin")){
+
+				JsonElement e = numbers(r, origin, 3 * i, 3);
+
+				if(e == null)
+					flags[i] |= HAS_ORIGIN | ints << ORIGIN_INTS;
+				else
+					rotationExtra(i).add(name, e);
+
+			} else if(name.equals("axis") && r.peek() == JsonToken.STRING){
+
+				axis[i] = string(r.nextString());
+
+			} else if(name.equals("angle") && r.peek() == JsonToken.NUMBER){
+
+				String s = r.nextString();
+				angle[i] = Double.parseDouble(s);
+				flags[i] |= HAS_ANGLE | (integral(s) ? ANGLE_INT : 0);
+
+			} else {
+
+				rotationExtra(i).add(name, parser.parse(r));
+			}
+		}
+
+		r.endObject();
+	}
+
+	private void readFaces(JsonReader r, int i) throws IOException {
+
+		flags[i] |= HAS_FACES;
+
+		r.beginObject();
+
+		while(r.hasNext()){
+
+			String name = r.nextName();
+			int f = face(name);
+
+			if(f < 0 || hasFace(i, f) || r.peek() != JsonToken.BEGIN_OBJECT){
+
+				if(otherFaces[i] == null)
+					otherFaces[i] = new JsonObject();
+
+				otherFaces[i].add(name, parser.parse(r));
+				appendFace(i, OTHER);
+				continue;
+			}
+
+			readFace(r, 6 * i + f);
+			appendFace(i, 1 + f);
+		}
+
+		r.endObject();
+	}
+
+	private void readFace(JsonReader r, int k) throws IOException {
+
+		r.beginObject();
+
+		while(r.hasNext()){
+
+			String name = r.nextName();
+			JsonToken t = r.peek();
+
+			switch(name) {
+
+			case "uv": {
+
+				JsonElement e = numbers(r, uv, 4 * k, 4);
+
+				if(e == null)
+					faceFlags[k] = (byte) (HAS_UV | ints);
+				else
+					faceExtra(k).add(name, e);
+
+			} continue;
+
+			case "texture": case "cullface": {
+
+				if(t != JsonToken.STRING)
+					break;
+
+				(name.equals("texture") ? texture : cullface)[k] = string(r.nextString());
+
+			} continue;
+
+			case "rotation": case "tintindex": {
+
+				if(t != JsonToken.NUMBER)
+					break;
+
+				String s = r.nextString();
+
+				// anything but an int is kept as written
+				try {
+					if(integral(s)){
+						(name.equals("rotation") ? rotation : tintindex)[k] = Integer.parseInt(s);
+						continue;
+					}
+				} catch (NumberFormatException e) {}
+
+				faceExtra(k).add(name, new JsonPrimitive(new LazilyParsedNumber(s)));
+
+			} continue;
+			}
+
+			faceExtra(k).add(name, parser.parse(r));
+		}
+
+		r.endObject();
+	}
+
+	// reads an array of exactly n numbers into dst and which of them were integers into ints,
+	// anything else is returned as json instead
+	private JsonElement numbers(JsonReader r, double[] dst, int off, int n) throws IOException {
+
+		if(r.peek() != JsonToken.BEGIN_ARRAY)
+			return parser.parse(r);
+
+		JsonArray spill = null;
+		int k = 0;
+
+		ints = 0;
+
+		r.beginArray();
+
+		while(r.hasNext()){
+
+			if(spill == null && k < n && r.peek() == JsonToken.NUMBER){
+
+				String s = r.nextString();
+				texts[k] = s;
+				dst[off + k] = Double.parseDouble(s);
+
+				if(integral(s))
+					ints |= 1 << k;
+
+				k++;
+				continue;
+			}
+
+			if(spill == null)
+				spill = spill(k);
+
+			spill.add(parser.parse(r));
+		}
+
+		r.endArray();
+
+		if(spill == null && k < n)
+			spill = spill(k);
+
+		return spill;
+	}
+
+	private JsonArray spill(int k) {
+
+		JsonArray a = new JsonArray();
+
+		for(int j = 0; j < k; j++)
+			a.add(new JsonPrimitive(new LazilyParsedNumber(texts[j])));
+
+		return a;
+	}
+
+	private static boolean integral(String s) {
+
+		for(int i = 0; i < s.length(); i++){
+
+			char c = s.charAt(i);
+			if(c == '.' || c == 'e' || c == 'E')
+				return false;
+		}
+
+		return true;
+	}
+
+	private String string(String s) {
+
+		String pooled = strings.putIfAbsent(s, s);
+		return pooled == null ? s : pooled;
+	}
+
+	public static int face(String name) {
+
+		switch(name) {
+
+		case "down": return DOWN;
+		case "up": return UP;
+		case "north": return NORTH;
+		case "south": return SOUTH;
+		case "west": return WEST;
+		case "east": return EAST;
+
+		default: return -1;
+		}
+	}
+
+	public boolean hasFace(int i, int f) {
+
+		long o = faceOrder[i];
+
+		for(int s = 0; s < SLOTS; s++, o >>>= 4){
+
+			if((o & 0xf) == 1 + f)
+				return true;
+			if((o & 0xf) == 0)
+				return false;
+		}
+
+		return false;
+	}
+
+	// a face that's already there keeps its place, a new one goes last
+	public void addFace(int i, int f) {
+
+		if(!hasFace(i, f))
+			appendFace(i, 1 + f);
+	}
+
+	public void removeFace(int i, int f) {
+
+		long o = faceOrder[i];
+		long kept = 0;
+		int n = 0;
+
+		for(int s = 0; s < SLOTS; s++, o >>>= 4){
+
+			int id = (int) (o & 0xf);
+
+			if(id == 0)
+				break;
+			if(id != 1 + f)
+				kept |= (long) id << (4 * n++);
+		}
+
+		faceOrder[i] = kept;
+		clearFace(6 * i + f);
+	}
+
+	private void appendFace(int i, int id) {
+
+		long o = faceOrder[i];
+
+		for(int s = 0; s < SLOTS; s++){
+
+			if(((o >>> (4 * s)) & 0xf) == 0){
+				faceOrder[i] = o | (long) id << (4 * s);
+				return;
+			}
+		}
+	}
+
+	// copies everything about one face into another, both indexed element * 6 + face;
+	// the scratch slot past the last element can be used to hold one while shuffling
+	public void copyFace(int from, int to) {
+
+		faceFlags[to] = faceFlags[from];
+		System.arraycopy(uv, 4 * from, uv, 4 * to, 4);
+		texture[to] = texture[from];
+		cullface[to] = cullface[from];
+		rotation[to] = rotation[from];
+		tintindex[to] = tintindex[from];
+		faceExtra[to] = faceExtra[from];
+	}
+
+	public int scratch() {
+
+		return faceFlags.length - 1;
+	}
+
+	private void clearFace(int k) {
+
+		faceFlags[k] = 0;
+		texture[k] = null;
+		cullface[k] = null;
+		rotation[k] = NONE;
+		tintindex[k] = NONE;
+		faceExtra[k] = null;
+	}
+
+	public JsonObject extra(int i) {
+
+		if(extra[i] == null)
+			extra[i] = new JsonObject();
+
+		return extra[i];
+	}
+
+	public JsonObject rotationExtra(int i) {
+
+		if(rotationExtra[i] == null)
+			rotationExtra[i] = new JsonObject();
+
+		return rotationExtra[i];
+	}
+
+	public JsonObject faceExtra(int k) {
+
+		if(faceExtra[k] == null)
+			faceExtra[k] = new JsonObject();
+
+		return faceExtra[k];
+	}
+
+	// appends an empty element and returns its index
+	public int add() {
+
+		if(size == flags.length)
+			grow(2 * size);
+
+		int i = size++;
+
+		flags[i] = 0;
+		axis[i] = null;
+		extra[i] = null;
+		rotationExtra[i] = null;
+		otherFaces[i] = null;
+		order[i] = 0;
+		faceOrder[i] = 0;
+
+		for(int f = 0; f < 6; f++)
+			clearFace(6 * i + f);
+
+		return i;
+	}
+
+	// appends all of another model's elements, sharing any json they hold
+	public void append(Model m) {
+
+		if(!hasElements())
+			elementsAt = members.entrySet().size();
+
+		if(size + m.size > flags.length)
+			grow(Math.max(2 * flags.length, size + m.size));
+
+		int n = m.size;
+		int i = size;
+
+		System.arraycopy(m.flags, 0, flags, i, n);
+		System.arraycopy(m.from, 0, from, 3 * i, 3 * n);
+		System.arraycopy(m.to, 0, to, 3 * i, 3 * n);
+		System.arraycopy(m.origin, 0, origin, 3 * i, 3 * n);
+		System.arraycopy(m.angle, 0, angle, i, n);
+		System.arraycopy(m.axis, 0, axis, i, n);
+		System.arraycopy(m.extra, 0, extra, i, n);
+		System.arraycopy(m.rotationExtra, 0, rotationExtra, i, n);
+		System.arraycopy(m.otherFaces, 0, otherFaces, i, n);
+		System.arraycopy(m.order, 0, order, i, n);
+		System.arraycopy(m.faceOrder, 0, faceOrder, i, n);
+
+		System.arraycopy(m.faceFlags, 0, faceFlags, 6 * i, 6 * n);
+		System.arraycopy(m.uv, 0, uv, 24 * i, 24 * n);
+		System.arraycopy(m.texture, 0, texture, 6 * i, 6 * n);
+		System.arraycopy(m.cullface, 0, cullface, 6 * i, 6 * n);
+		System.arraycopy(m.rotation, 0, rotation, 6 * i, 6 * n);
+		System.arraycopy(m.tintindex, 0, tintindex, 6 * i, 6 * n);
+		System.arraycopy(m.faceExtra, 0, faceExtra, 6 * i, 6 * n);
+
+		size += n;
+	}
+
+	// drops the elements marked in removed, the rest keep their order
+	public void remove(BitSet removed) {
+
+		int j = 0;
+
+		for(int i = 0; i < size; i++){
+
+			if(removed.get(i))
+				continue;
+
+			if(i != j)
+				move(i, j);
+
+			j++;
+		}
+
+		size = j;
+	}
+
+	private void move(int i, int j) {
+
+		flags[j] = flags[i];
+		System.arraycopy(from, 3 * i, from, 3 * j, 3);
+		System.arraycopy(to, 3 * i, to, 3 * j, 3);
+		System.arraycopy(origin, 3 * i, origin, 3 * j, 3);
+		angle[j] = angle[i];
+		axis[j] = axis[i];
+		extra[j] = extra[i];
+		rotationExtra[j] = rotationExtra[i];
+		otherFaces[j] = otherFaces[i];
+		order[j] = order[i];
+		faceOrder[j] = faceOrder[i];
+
+		for(int f = 0; f < 6; f++)
+			copyFace(6 * i + f, 6 * j + f);
+	}
+
+	// a copy with its own arrays, members and extras are shared
+	public Model copy() {
+
+		Model m = new Model();
+
+		for(Entry<String, JsonElement> e : members.entrySet())
+			m.members.add(e.getKey(), e.getValue());
+
+		m.append(this);
+		m.elementsAt = elementsAt;
+
+		return m;
+	}
+
+	// like copy(), but sharing no json with this model, so either can be changed
+	public Model deepCopy() {
+
+		Model m = new Model();
+
+		for(Entry<String, JsonElement> e : members.entrySet())
+			m.members.add(e.getKey(), deepCopy(e.getValue()));
+
+		m.append(this);
+		m.elementsAt = elementsAt;
+
+		for(int i = 0; i < size; i++){
+			m.extra[i] = deepCopy(extra[i]);
+			m.rotationExtra[i] = deepCopy(rotationExtra[i]);
+			m.otherFaces[i] = deepCopy(otherFaces[i]);
+		}
+
+		for(int k = 0; k < 6 * size; k++)
+			m.faceExtra[k] = deepCopy(faceExtra[k]);
+
+		return m;
+	}
+
+	// gson's own deepCopy isn't public in this version. primitives can't be changed, so they're shared
+	@SuppressWarnings("unchecked")
+	public static <T extends JsonElement> T deepCopy(T e) {
+
+		if(e == null)
+			return null;
+
+		if(e.isJsonObject()){
+
+			JsonObject o = new JsonObject();
+
+			for(Entry<String, JsonElement> member : e.getAsJsonObject().entrySet())
+				o.add(member.getKey(), deepCopy(member.getValue()));
+
+			return (T) o;
+		}
+
+		if(e.isJsonArray()){
+
+			JsonArray a = new JsonArray();
+
+			for(JsonElement el : e.getAsJsonArray())
+				a.add(deepCopy(el));
+
+			return (T) a;
+		}
+
+		return e;
+	}
+
+	// drops the elements, keeping the arrays for reuse
+	public void clear() {
+
+		size = 0;
+	}
+
+	private void grow(int capacity) {
+
+		int faces = 6 * capacity + 1;
+
+		flags = flags == null ? new int[capacity] : Arrays.copyOf(flags, capacity);
+		from = from == null ? new double[3 * capacity] : Arrays.copyOf(from, 3 * capacity);
+		to = to == null ? new double[3 * capacity] : Arrays.copyOf(to, 3 * capacity);
+		origin = origin == null ? new double[3 * capacity] : Arrays.copyOf(origin, 3 * capacity);
+		angle = angle == null ? new double[capacity] : Arrays.copyOf(angle, capacity);
+		axis = axis == null ? new String[capacity] : Arrays.copyOf(axis, capacity);
+		extra = extra == null ? new JsonObject[capacity] : Arrays.copyOf(extra, capacity);
+		rotationExtra = rotationExtra == null ? new JsonObject[capacity] : Arrays.copyOf(rotationExtra, capacity);
+		otherFaces = otherFaces == null ? new JsonObject[capacity] : Arrays.copyOf(otherFaces, capacity);
+		order = order == null ? new long[capacity] : Arrays.copyOf(order, capacity);
+		faceOrder = faceOrder == null ? new long[capacity] : Arrays.copyOf(faceOrder, capacity);
+
+		faceFlags = faceFlags == null ? new byte[faces] : Arrays.copyOf(faceFlags, faces);
+		uv = uv == null ? new double[4 * faces] : Arrays.copyOf(uv, 4 * faces);
+		texture = texture == null ? new String[faces] : Arrays.copyOf(texture, faces);
+		cullface = cullface == null ? new String[faces] : Arrays.copyOf(cullface, faces);
+		rotation = rotation == null ? new int[faces] : Arrays.copyOf(rotation, faces);
+		tintindex = tintindex == null ? new int[faces] : Arrays.copyOf(tintindex, faces);
+		faceExtra = faceExtra == null ? new JsonObject[faces] : Arrays.copyOf(faceExtra, faces);
+	}
+
+	// for diagnostics, e.g. "[ 0.0, 8, 16 ]"
+	public static String vector(double[] a, int off, int n) {
+
+		StringBuilder b = new StringBuilder("[ ");
+
+		for(int j = 0; j < n; j++)
+			b.append(j > 0 ? ", " : "").append(a[off + j]);
+
+		return b.append(" ]").toString();
+	}
+
+	public String toString() {
+
+		StringWriter w = new StringWriter();
+
+		try {
+			new JsonFormatter(w, "").write(this);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return w.toString();
+	}
+}
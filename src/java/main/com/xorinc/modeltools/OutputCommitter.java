@@ -0,0 +1,73 @@
+package com.xorinc.modeltools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+// Publishes an output whole. It's written to a temp file next to where it goes and then moved
+// over the old one in a single step, so a crash or a failing tool never leaves it empty or half
+// written. Whatever wasn't committed is deleted on close.
+public class OutputCommitter implements AutoCloseable {
+
+	private final Path out, temp;
+
+	public OutputCommitter(Path out) throws IOException {
+
+		this.out = out;
+		// in the same directory, so it's on the same filesystem and the move can be atomic
+		this.temp = create(out.toAbsolutePath().getParent());
+
+		// a rewritten output keeps the mode it had, like it did when it was written in place
+		if(Files.exists(out)){
+
+			try {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(out));
+			} catch (UnsupportedOperationException e) {}
+		}
+	}
+
+	// not createTempFile, whose files are only readable by their owner; this one gets the umask like any other output
+	private static Path create(Path dir) throws IOException {
+
+		while(true){
+
+			try {
+				return Files.createFile(dir.resolve(".ModelToolstemp" + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+			} catch (FileAlreadyExistsException e) {}
+		}
+	}
+
+	public Path temp() {
+
+		return temp;
+	}
+
+	public OutputStream stream() throws IOException {
+
+		return Files.newOutputStream(temp);
+	}
+
+	public void commit() throws IOException {
+
+		try {
+			Files.move(temp, out, StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (AtomicMoveNotSupportedException e) {
+
+			Log.debug(() -> "can't move atomically, copying to " + out);
+			Files.copy(temp, out, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		Files.deleteIfExists(temp);
+	}
+}
@@ -0,0 +1,375 @@
+package com.xorinc.modeltools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+
+// What each model in a pack looks like, kept in a small binary file so later runs can pick
+// their targets with a query instead of parsing every file. Entries are redone only for files
+// whose size or mtime changed, and only reparsed if their contents did.
+public class PackIndex {
+
+	private static final int MAGIC = 0x4d544958, VERSION = 1;
+
+	private static final HashFunction hash = Hashing.sha1();
+
+	private final File file;
+
+	// absolute path -> entry, sorted so the file comes out the same for the same pack
+	private final Map<String, Indexed> entries = new TreeMap<>();
+
+	private boolean dirty;
+
+	private PackIndex(File file){
+		this.file = file;
+	}
+
+	public static PackIndex load(File file) throws IOException {
+
+		PackIndex index = new PackIndex(file);
+
+		if(!file.exists())
+			return index;
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				// written by another version, everything is redone
+				Log.info(() -> "ignoring outdated index " + file);
+				return index;
+			}
+
+			String[] strings = new String[in.readInt()];
+
+			for(int i = 0; i < strings.length; i++)
+				strings[i] = in.readUTF();
+
+			for(int n = in.readInt(); n > 0; n--){
+
+				Indexed e = new Indexed(strings[in.readInt()]);
+
+				e.size = in.readLong();
+				e.modified = in.readLong();
+				e.hash = in.readLong();
+				e.parent = string(strings, in.readInt());
+				e.elements = in.readInt();
+
+				if(e.elements > 0){
+					for(int i = 0; i < 6; i++)
+						e.bounds[i] = in.readFloat();
+				}
+
+				e.textures = new String[in.readShort()];
+				for(int i = 0; i < e.textures.length; i++)
+					e.textures[i] = strings[in.readInt()];
+
+				e.display = new String[in.readShort()];
+				for(int i = 0; i < e.display.length; i++)
+					e.display[i] = strings[in.readInt()];
+
+				index.entries.put(e.path, e);
+			}
+
+		} catch (EOFException | ArrayIndexOutOfBoundsException e) {
+
+			Main.err.printf("Index `%s' is damaged, rebuilding it.%n", file);
+			index.entries.clear();
+		}
+
+		return index;
+	}
+
+	// the entry for f, redone first if f changed since it was made
+	public Indexed update(Path f) throws IOException {
+
+		String path = f.toAbsolutePath().normalize().toString();
+		long size = Files.size(f), modified = Files.getLastModifiedTime(f).toMillis();
+		Indexed e = entries.get(path);
+
+		if(e != null && e.size == size && e.modified == modified)
+			return e;
+
+		byte[] bytes = Files.readAllBytes(f);
+		long h = hash.hashBytes(bytes).asLong();
+
+		if(e == null || e.hash != h){
+
+			Log.info(() -> "indexing " + f);
+
+			e = new Indexed(path);
+			e.hash = h;
+			e.read(bytes);
+			entries.put(path, e);
+		}
+
+		e.size = size;
+		e.modified = modified;
+		dirty = true;
+
+		return e;
+	}
+
+	public int size() {
+
+		return entries.size();
+	}
+
+	public void save() throws IOException {
+
+		// files that are gone since the last run
+		if(entries.keySet().removeIf(p -> !Files.isRegularFile(Paths.get(p))))
+			dirty = true;
+
+		if(!dirty)
+			return;
+
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+
+		for(Indexed e : entries.values()){
+
+			id(ids, strings, e.path);
+			id(ids, strings, e.parent);
+			Arrays.stream(e.textures).forEach(s -> id(ids, strings, s));
+			Arrays.stream(e.display).forEach(s -> id(ids, strings, s));
+		}
+
+		// an interrupted save leaves the old index as it was
+		try(OutputCommitter commit = new OutputCommitter(file.toPath())){
+
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(commit.stream()))){
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(strings.size());
+
+				for(String s : strings)
+					out.writeUTF(s);
+
+				out.writeInt(entries.size());
+
+				for(Indexed e : entries.values()){
+
+					out.writeInt(ids.get(e.path));
+					out.writeLong(e.size);
+					out.writeLong(e.modified);
+					out.writeLong(e.hash);
+					out.writeInt(e.parent == null ? -1 : ids.get(e.parent));
+					out.writeInt(e.elements);
+
+					if(e.elements > 0){
+						for(float b : e.bounds)
+							out.writeFloat(b);
+					}
+
+					out.writeShort(e.textures.length);
+					for(String s : e.textures)
+						out.writeInt(ids.get(s));
+
+					out.writeShort(e.display.length);
+					for(String s : e.display)
+						out.writeInt(ids.get(s));
+				}
+			}
+
+			commit.commit();
+		}
+
+		dirty = false;
+	}
+
+	private static void id(Map<String, Integer> ids, List<String> strings, String s) {
+
+		if(s != null && !ids.containsKey(s)){
+			ids.put(s, strings.size());
+			strings.add(s);
+		}
+	}
+
+	private static String string(String[] strings, int id) {
+
+		return id < 0 ? null : strings[id];
+	}
+
+	// one indexed file. elements is -1 for files that aren't models
+	public static class Indexed {
+
+		public final String path;
+		public long size, modified, hash;
+		public String parent;
+		public int elements;
+		// min x, y, z, max x, y, z over every element's from and to
+		public final float[] bounds = new float[6];
+		public String[] textures = {}, display = {};
+
+		Indexed(String path){
+			this.path = path;
+		}
+
+		private void read(byte[] bytes) {
+
+			Model m;
+
+			// a broken file is indexed like any other that isn't a model, so it's only looked at again when it changes
+			try(Reader r = new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)){
+				m = Model.read(r);
+			} catch (JsonParseException | IllegalStateException | IOException e) {
+				elements = -1;
+				return;
+			}
+
+			JsonElement p = m.members.get("parent");
+			parent = p != null && p.isJsonPrimitive() ? ParentResolver.id(p.getAsString()) : null;
+			textures = strings(m.members.get("textures"), true);
+			display = strings(m.members.get("display"), false);
+			elements = m.size;
+
+			Arrays.fill(bounds, 0, 3, Float.POSITIVE_INFINITY);
+			Arrays.fill(bounds, 3, 6, Float.NEGATIVE_INFINITY);
+
+			for(int i = 0; i < 3 * m.size; i++){
+
+				int axis = i % 3;
+				double lo = Math.min(m.from[i], m.to[i]), hi = Math.max(m.from[i], m.to[i]);
+
+				bounds[axis] = (float) Math.min(bounds[axis], lo);
+				bounds[3 + axis] = (float) Math.max(bounds[3 + axis], hi);
+			}
+		}
+
+		// the object's string values, or its keys
+		private static String[] strings(JsonElement e, boolean values) {
+
+			if(e == null || !e.isJsonObject())
+				return new String[0];
+
+			List<String> l = new ArrayList<>();
+
+			for(Entry<String, JsonElement> member : e.getAsJsonObject().entrySet()){
+
+				if(!values)
+					l.add(member.getKey());
+				else if(member.getValue().isJsonPrimitive())
+					l.add(member.getValue().getAsString());
+			}
+
+			return l.toArray(new String[l.size()]);
+		}
+
+	}
+
+	// space separated terms that must all hold, e.g. "path=**/models/item/** display=gui elements>0":
+	//   path=<glob>  parent=<model>  texture=<texture>  display=<context>  elements(=|<|>|<=|>=)<n>
+	public static Predicate<Indexed> query(String q) {
+
+		Predicate<Indexed> all = e -> true;
+
+		for(String term : q.trim().split("\\s+")){
+
+			if(term.isEmpty())
+				continue;
+
+			int at = indexOfAny(term, '<', '>', '=');
+
+			if(at <= 0)
+				throw new IllegalArgumentException("Bad query term: " + term);
+
+			String key = term.substring(0, at);
+			String op = term.substring(at).replaceAll("^([<>]?=?).*", "$1");
+			String value = term.substring(at + op.length());
+
+			all = all.and(term(key, op, value, term));
+		}
+
+		return all;
+	}
+
+	private static Predicate<Indexed> term(String key, String op, String value, String term) {
+
+		if(!key.equals("elements") && !op.equals("="))
+			throw new IllegalArgumentException("Bad query term: " + term);
+
+		switch(key){
+
+		case "path": {
+
+			PathMatcher m = FileSystems.getDefault().getPathMatcher("glob:" + value);
+			return e -> m.matches(Paths.get(e.path));
+		}
+
+		case "parent": {
+
+			String id = ParentResolver.id(value);
+			return e -> id.equals(e.parent);
+		}
+
+		case "texture": return e -> Arrays.asList(e.textures).contains(value);
+		case "display": return e -> Arrays.asList(e.display).contains(value);
+
+		case "elements": {
+
+			int n;
+
+			try {
+				n = Integer.parseInt(value);
+			} catch (NumberFormatException ex) {
+				throw new IllegalArgumentException("Bad query term: " + term);
+			}
+
+			switch(op){
+			case "=": return e -> e.elements == n;
+			case "<": return e -> e.elements >= 0 && e.elements < n;
+			case ">": return e -> e.elements > n;
+			case "<=": return e -> e.elements >= 0 && e.elements <= n;
+			case ">=": return e -> e.elements >= n;
+			default: throw new IllegalArgumentException("Bad query term: " + term);
+			}
+		}
+
+		default: throw new IllegalArgumentException("Bad query term: " + term);
+		}
+	}
+
+	private static int indexOfAny(String s, char... cs) {
+
+		int min = -1;
+
+		for(char c : cs){
+
+			int i = s.indexOf(c);
+
+			if(i >= 0 && (min < 0 || i < min))
+				min = i;
+		}
+
+		return min;
+	}
+}
@@ -0,0 +1,251 @@
+package com.xorinc.modeltools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.xorinc.modeltools.Main.ToolException;
+
+
+// Inlines `parent' models from an assets directory (assets/<namespace>/models/...), so tools can
+// work on models that inherit their elements. The tree is indexed once, and every ancestor is
+// read and resolved at most once, after which it's shared by all the threads flattening models.
+public class ParentResolver {
+
+	// merged key by key instead of replaced
+	private static final String[] merged = { "textures", "display" };
+
+	private final Path assets;
+	private final Map<String, Path> index = new HashMap<>();
+	// flattened ancestors, never changed once in here
+	private final ConcurrentMap<String, Model> resolved = new ConcurrentHashMap<>();
+
+	public ParentResolver(Path assets){
+
+		this.assets = assets;
+
+		try(Stream<Path> namespaces = Files.list(assets)){
+
+			for(Path ns : (Iterable<Path>) namespaces::iterator){
+
+				Path models = ns.resolve("models");
+
+				if(Files.isDirectory(models))
+					index(ns.getFileName().toString().replace("/", ""), models);
+			}
+
+		} catch (IOException e) {
+
+			Main.err.printf("Error reading `%s'! %s%n", assets, e.getMessage());
+		}
+
+		Log.info(() -> String.format("indexed %d models in %s", index.size(), assets));
+	}
+
+	// the assets directory f is in, if any
+	public static Path assetsOf(Path f) {
+
+		for(Path p = f.toAbsolutePath().getParent(); p != null; p = p.getParent()){
+
+			if(p.getFileName() != null && p.getFileName().toString().equals("assets"))
+				return p;
+		}
+
+		return null;
+	}
+
+	// "block/stone" is short for "minecraft:block/stone"
+	public static String id(String parent) {
+
+		return parent.indexOf(':') < 0 ? "minecraft:" + parent : parent;
+	}
+
+	// m with its ancestors' members and elements inlined. m itself may be changed or returned.
+	// a parent outside the tree, like builtin/generated, is left as the result's parent
+	public Model flatten(Model m) throws ToolException {
+
+		String parent = parent(m);
+
+		if(parent == null)
+			return m;
+
+		Model p = resolve(id(parent));
+
+		return p == null ? m : merge(p, m);
+	}
+
+	private void index(String namespace, Path models) {
+
+		try {
+
+			Files.walkFileTree(models, new SimpleFileVisitor<Path>(){
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+
+					String name = models.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+
+					if(attrs.isRegularFile() && name.endsWith(".json"))
+						index.put(namespace + ":" + name.substring(0, name.length() - 5), file);
+
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+					Main.err.printf("Error reading `%s'! %s%n", file, e.getMessage());
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+		} catch (IOException e) {
+
+			Main.err.printf("Error reading `%s'! %s%n", models, e.getMessage());
+		}
+	}
+
+	// the flattened model for id, or null when it isn't in the tree
+	private Model resolve(String id) throws ToolException {
+
+		Model base = resolved.get(id);
+
+		if(base != null)
+			return base;
+
+		List<String> chain = new ArrayList<>();
+		List<Model> models = new ArrayList<>();
+
+		// up to the first ancestor that's resolved already, or that has no parent in the tree
+		for(String cur = id; cur != null; ){
+
+			base = resolved.get(cur);
+
+			if(base != null || !index.containsKey(cur))
+				break;
+
+			if(chain.contains(cur))
+				throw new ToolException("Parent cycle: " + String.join(" -> ", chain) + " -> " + cur);
+
+			Model m = read(cur);
+			chain.add(cur);
+			models.add(m);
+
+			String parent = parent(m);
+			cur = parent == null ? null : id(parent);
+		}
+
+		// then back down. two threads may both get here for the same model, the first one's result is kept
+		for(int i = chain.size() - 1; i >= 0; i--){
+
+			Model r = base == null ? models.get(i) : merge(base, models.get(i));
+			Model prev = resolved.putIfAbsent(chain.get(i), r);
+
+			base = prev == null ? r : prev;
+		}
+
+		return base;
+	}
+
+	private Model read(String id) throws ToolException {
+
+		Path p = index.get(id);
+
+		try(Reader r = Files.newBufferedReader(p)){
+
+			return Model.read(r);
+
+		} catch (IOException | JsonParseException | IllegalStateException e) {
+
+			throw new ToolException(String.format("Malformed parent model `%s'!", assets.relativize(p)));
+		}
+	}
+
+	// a new model of child over a copy of parent: the child's members win, except that textures and display
+	// are merged, and like in the game its elements replace the parent's only if there are any. members keep the parent's order
+	private static Model merge(Model parent, Model child) {
+
+		Model p = parent.deepCopy();
+		Model m = new Model();
+		JsonObject members = child.members;
+		int k = 0;
+
+		for(Entry<String, JsonElement> e : p.members.entrySet()){
+
+			if(k++ == p.elementsAt)
+				m.elementsAt = m.members.entrySet().size();
+
+			String key = e.getKey();
+			JsonElement value = members.get(key);
+
+			// whatever is left of the parent's own chain
+			if(key.equals("parent") || value == null){
+				m.members.add(key, e.getValue());
+				continue;
+			}
+
+			if(isMerged(key) && value.isJsonObject() && e.getValue().isJsonObject()){
+
+				for(Entry<String, JsonElement> c : value.getAsJsonObject().entrySet())
+					e.getValue().getAsJsonObject().add(c.getKey(), c.getValue());
+
+				value = e.getValue();
+			}
+
+			m.members.add(key, value);
+		}
+
+		if(k == p.elementsAt)
+			m.elementsAt = m.members.entrySet().size();
+
+		for(Entry<String, JsonElement> e : members.entrySet()){
+
+			if(!e.getKey().equals("parent") && p.members.get(e.getKey()) == null)
+				m.members.add(e.getKey(), e.getValue());
+		}
+
+		Model elements = child.size > 0 || !p.hasElements() ? child : p;
+
+		if(elements.hasElements()){
+
+			int at = m.hasElements() ? m.elementsAt : m.members.entrySet().size();
+
+			m.append(elements);
+			m.elementsAt = at;
+		}
+
+		return m;
+	}
+
+	private static boolean isMerged(String key) {
+
+		for(String s : merged){
+			if(s.equals(key))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static String parent(Model m) {
+
+		JsonElement p = m.members.get("parent");
+
+		return p != null && p.isJsonPrimitive() ? p.getAsString() : null;
+	}
+}
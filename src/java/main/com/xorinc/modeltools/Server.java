@@ -0,0 +1,190 @@
+package com.xorinc.modeltools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+
+public class Server {
+
+	public static final int DEFAULT_PORT = 25541;
+
+	static final byte EXIT = 0, OUT = 1, ERR = 2;
+
+	// how long a client gets to send its request
+	private static final int TIMEOUT = 10000;
+	private static final int MAX_ARGS = 1 << 16;
+
+	public static void serve(int port) throws IOException {
+
+		// Main's streams are the client's while one is served
+		PrintStream log = Main.out, errors = Main.err;
+
+		try(ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())){
+
+			String token = token(port);
+
+			log.println("Serving on " + server.getLocalSocketAddress());
+
+			while(true){
+
+				try(Socket s = server.accept()){
+
+					s.setSoTimeout(TIMEOUT);
+					handle(s, token);
+
+				} catch (IOException | RuntimeException e) {
+
+					errors.println("Error serving client: " + e);
+				}
+			}
+		}
+	}
+
+	// the port lets anyone on the machine in, so clients have to show they can read this file, which only its owner can
+	static File tokenFile(int port) {
+
+		return new File(System.getProperty("user.home"), ".modeltools-" + port + ".token");
+	}
+
+	private static String token(int port) throws IOException {
+
+		byte[] b = new byte[32];
+		new SecureRandom().nextBytes(b);
+
+		String token = Base64.getEncoder().encodeToString(b);
+		Path file = tokenFile(port).toPath();
+
+		Files.deleteIfExists(file);
+
+		try {
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			Files.createFile(file);
+		}
+
+		Files.write(file, token.getBytes(StandardCharsets.UTF_8));
+		file.toFile().deleteOnExit();
+
+		return token;
+	}
+
+	// request: token, cwd, argc, argv as modified UTF-8
+	// response: OUT/ERR frames of <length><bytes>, then EXIT <status>
+	private static void handle(Socket s, String token) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+		if(!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), in.readUTF().getBytes(StandardCharsets.UTF_8))){
+			reject(out, "Bad token.");
+			return;
+		}
+
+		File cwd = new File(in.readUTF());
+		int argc = in.readInt();
+
+		if(argc < 0 || argc > MAX_ARGS){
+			reject(out, "Bad argument count: " + argc);
+			return;
+		}
+
+		String[] args = new String[argc];
+
+		for(int i = 0; i < args.length; i++)
+			args[i] = in.readUTF();
+
+		int status;
+
+		try(PrintStream stdout = new PrintStream(new Channel(out, OUT), true);
+			PrintStream stderr = new PrintStream(new Channel(out, ERR), true)){
+
+			try {
+				status = Main.run(cwd, stdout, stderr, args);
+			} catch (Throwable t) {
+				t.printStackTrace(stderr);
+				status = 1;
+			}
+		}
+
+		exit(out, status);
+	}
+
+	private static void reject(DataOutputStream out, String message) throws IOException {
+
+		byte[] b = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+		out.writeByte(ERR);
+		out.writeInt(b.length);
+		out.write(b);
+		exit(out, 1);
+	}
+
+	private static void exit(DataOutputStream out, int status) throws IOException {
+
+		synchronized(out){
+			out.writeByte(EXIT);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+
+	private static class Channel extends OutputStream {
+
+		private final DataOutputStream out;
+		private final byte type;
+
+		Channel(DataOutputStream out, byte type){
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			if(len == 0)
+				return;
+
+			synchronized(out){
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+
+			synchronized(out){
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			flush();
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package com.xorinc.modeltools;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import com.google.gson.JsonElement;
+
+
+// Finds a model's elements by where they are, from the cells of a uniform grid their bounds cover.
+// Cells are about the size of an average element, elements much bigger than that are kept aside
+// and checked on every query. Rotated elements are indexed by the bounds of their turned box.
+// The index doesn't follow changes to the model. Queries keep no state, any thread can run them.
+public final class SpatialIndex {
+
+	// elements covering more cells than this are kept aside
+	private static final int MAX_CELLS = 64;
+
+	private final BitSet indexed = new BitSet();
+	// three per element, the corners of its bounds
+	private final double[] lo, hi;
+
+	private final double cell;
+	// the cells that hold elements, sorted, with the elements in keys[n] at ids[starts[n]] up to ids[starts[n + 1]]
+	private final long[] keys;
+	private final int[] starts, ids;
+	private final int[] big;
+
+	public SpatialIndex(Model m){
+		this(m, null);
+	}
+
+	// indexes the elements set in which, or when it's null every one with a from and a to
+	public SpatialIndex(Model m, BitSet which){
+
+		lo = new double[3 * m.size];
+		hi = new double[3 * m.size];
+
+		double sum = 0;
+
+		for(int i = 0; i < m.size; i++){
+
+			if(which != null ? !which.get(i) : !m.has(i, Model.HAS_FROM | Model.HAS_TO))
+				continue;
+
+			indexed.set(i);
+			bounds(m, i);
+
+			for(int a = 0; a < 3; a++)
+				sum += hi[3 * i + a] - lo[3 * i + a];
+		}
+
+		// a power of two, so elements on the usual 1/16 grid fit in cells exactly instead of spilling into the next
+		double mean = Math.max(sum / (3 * Math.max(1, indexed.cardinality())), 1e-3);
+		cell = Math.pow(2, Math.ceil(Math.log(mean) / Math.log(2)));
+
+		// each element in each cell it covers, then grouped by cell
+		int pairs = 0;
+		int[] bigs = new int[0];
+
+		for(int i = indexed.nextSetBit(0); i >= 0; i = indexed.nextSetBit(i + 1)){
+
+			long cells = cells(i);
+
+			if(cells > MAX_CELLS){
+				bigs = Arrays.copyOf(bigs, bigs.length + 1);
+				bigs[bigs.length - 1] = i;
+			} else {
+				pairs += cells;
+			}
+		}
+
+		big = bigs;
+
+		long[] pairKeys = new long[pairs];
+		int[] pairIds = new int[pairs];
+		int p = 0;
+
+		for(int i = indexed.nextSetBit(0); i >= 0; i = indexed.nextSetBit(i + 1)){
+
+			if(cells(i) > MAX_CELLS)
+				continue;
+
+			for(long x = cell(lo[3 * i]); x <= last(i, 0); x++){
+				for(long y = cell(lo[3 * i + 1]); y <= last(i, 1); y++){
+					for(long z = cell(lo[3 * i + 2]); z <= last(i, 2); z++){
+						pairKeys[p] = key(x, y, z);
+						pairIds[p++] = i;
+					}
+				}
+			}
+		}
+
+		long[] sorted = pairKeys.clone();
+		int unique = 0;
+
+		Arrays.sort(sorted);
+
+		for(int n = 0; n < pairs; n++){
+			if(n == 0 || sorted[n] != sorted[n - 1])
+				sorted[unique++] = sorted[n];
+		}
+
+		keys = Arrays.copyOf(sorted, unique);
+		starts = new int[keys.length + 1];
+		ids = new int[pairs];
+
+		for(long k : pairKeys)
+			starts[Arrays.binarySearch(keys, k) + 1]++;
+
+		for(int n = 0; n < keys.length; n++)
+			starts[n + 1] += starts[n];
+
+		int[] next = Arrays.copyOf(starts, keys.length);
+
+		for(int n = 0; n < pairs; n++)
+			ids[next[Arrays.binarySearch(keys, pairKeys[n])]++] = pairIds[n];
+	}
+
+	public boolean indexed(int i) {
+
+		return indexed.get(i);
+	}
+
+	public double lo(int i, int axis) {
+
+		return lo[3 * i + axis];
+	}
+
+	public double hi(int i, int axis) {
+
+		return hi[3 * i + axis];
+	}
+
+	// every indexed element whose bounds touch the box [lo, hi], once each, until visit returns true.
+	// returns whether it did
+	public boolean box(double[] lo, double[] hi, IntPredicate visit) {
+
+		for(int i : big){
+			if(touches(i, lo, hi) && visit.test(i))
+				return true;
+		}
+
+		// elements that end right where the box starts are in the cell before
+		long x0 = below(lo[0]), y0 = below(lo[1]), z0 = below(lo[2]);
+
+		for(long x = x0; x <= cell(hi[0]); x++){
+			for(long y = y0; y <= cell(hi[1]); y++){
+				for(long z = z0; z <= cell(hi[2]); z++){
+
+					int n = Arrays.binarySearch(keys, key(x, y, z));
+
+					if(n < 0)
+						continue;
+
+					for(int s = starts[n]; s < starts[n + 1]; s++){
+
+						int i = ids[s];
+
+						// an element is in all the cells it covers, it's only reported from the first one the box has too
+						if(x != Math.max(x0, cell(this.lo[3 * i])) || y != Math.max(y0, cell(this.lo[3 * i + 1])) || z != Math.max(z0, cell(this.lo[3 * i + 2])))
+							continue;
+
+						if(touches(i, lo, hi) && visit.test(i))
+							return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	// the indexed elements whose bounds hold the point
+	public boolean point(double x, double y, double z, IntPredicate visit) {
+
+		double[] p = { x, y, z };
+
+		return box(p, p, visit);
+	}
+
+	// the other indexed elements that take up space right in front of face f of i's bounds, over some of its area:
+	// the ones against it from outside, and the ones it's inside of
+	public boolean adjacent(int i, int f, IntPredicate visit) {
+
+		int a = Face.of(f).axis, b = (a + 1) % 3, c = (a + 2) % 3;
+		boolean up = Face.of(f).positive;
+		double at = up ? hi[3 * i + a] : lo[3 * i + a];
+
+		double[] l = Arrays.copyOfRange(lo, 3 * i, 3 * i + 3), h = Arrays.copyOfRange(hi, 3 * i, 3 * i + 3);
+
+		l[a] = h[a] = at;
+
+		return box(l, h, j -> {
+
+			double from = lo[3 * j + a], to = hi[3 * j + a];
+
+			if(j == i || (up ? from > at || to <= at : from >= at || to < at))
+				return false;
+
+			// not just along an edge
+			if(lo[3 * j + b] >= h[b] || hi[3 * j + b] <= l[b] || lo[3 * j + c] >= h[c] || hi[3 * j + c] <= l[c])
+				return false;
+
+			return visit.test(j);
+		});
+	}
+
+	private boolean touches(int i, double[] lo, double[] hi) {
+
+		for(int a = 0; a < 3; a++){
+			if(this.lo[3 * i + a] > hi[a] || this.hi[3 * i + a] < lo[a])
+				return false;
+		}
+
+		return true;
+	}
+
+	private long cells(int i) {
+
+		long n = 1;
+
+		for(int a = 0; a < 3; a++)
+			n *= last(i, a) - cell(lo[3 * i + a]) + 1;
+
+		return n;
+	}
+
+	private void bounds(Model m, int i) {
+
+		Arrays.fill(lo, 3 * i, 3 * i + 3, Double.POSITIVE_INFINITY);
+		Arrays.fill(hi, 3 * i, 3 * i + 3, Double.NEGATIVE_INFINITY);
+
+		int axis = m.has(i, Model.HAS_ROTATION) && m.angle[i] != 0 && m.axis[i] != null ? "xyz".indexOf(m.axis[i]) : -1;
+		double cos = 1, sin = 0, scale = 1;
+
+		if(axis >= 0){
+
+			double rad = Math.toRadians(m.angle[i]);
+			JsonElement rescale = m.rotationExtra[i] == null ? null : m.rotationExtra[i].get("rescale");
+
+			cos = Math.cos(rad);
+			sin = Math.sin(rad);
+
+			// like the game, stretched back out over the block
+			if(rescale != null && rescale.isJsonPrimitive() && rescale.getAsJsonPrimitive().isBoolean() && rescale.getAsBoolean())
+				scale = 1 / cos;
+		}
+
+		double[] v = new double[3];
+
+		for(int corner = 0; corner < 8; corner++){
+
+			for(int a = 0; a < 3; a++)
+				v[a] = (corner >> a & 1) == 0 ? m.from[3 * i + a] : m.to[3 * i + a];
+
+			// turned about the origin in the plane of the other two axes
+			if(axis >= 0){
+
+				int p = (axis + 1) % 3, q = (axis + 2) % 3;
+				double vp = v[p] - m.origin[3 * i + p], vq = v[q] - m.origin[3 * i + q];
+
+				v[p] = m.origin[3 * i + p] + scale * (vp * cos - vq * sin);
+				v[q] = m.origin[3 * i + q] + scale * (vp * sin + vq * cos);
+			}
+
+			for(int a = 0; a < 3; a++){
+				lo[3 * i + a] = Math.min(lo[3 * i + a], v[a]);
+				hi[3 * i + a] = Math.max(hi[3 * i + a], v[a]);
+			}
+		}
+	}
+
+	private long cell(double v) {
+
+		return (long) Math.floor(v / cell);
+	}
+
+	// the cell before v's when v is on the edge between them
+	private long below(double v) {
+
+		return (long) Math.ceil(v / cell) - 1;
+	}
+
+	// the last cell i takes up space in. one that ends on an edge between cells isn't in the next
+	private long last(int i, int a) {
+
+		return Math.max(cell(lo[3 * i + a]), below(hi[3 * i + a]));
+	}
+
+	// 21 bits a coordinate, plenty for model space
+	private static long key(long x, long y, long z) {
+
+		return (x & 0x1fffff) << 42 | (y & 0x1fffff) << 21 | z & 0x1fffff;
+	}
+}
@@ -0,0 +1,173 @@
+package com.xorinc.modeltools;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+// Hands files to a round of work as they change. Events are collected until none have come
+// for the debounce time, so the burst of writes an editor makes for one save is a single round.
+public class Watcher implements AutoCloseable {
+
+	public interface Round {
+
+		// changed file -> the directory argument it was found under, or null for files given directly
+		void run(Map<Path, Path> changed) throws IOException;
+	}
+
+	private final WatchService service;
+	private final long debounce;
+	private final boolean recursive;
+
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	// watched directory -> directory argument it's part of
+	private final Map<Path, Path> roots = new HashMap<>();
+	// files given directly, watched through their directory
+	private final Set<Path> files = new HashSet<>();
+
+	public Watcher(long debounce, boolean recursive) throws IOException {
+
+		this.service = FileSystems.getDefault().newWatchService();
+		this.debounce = debounce;
+		this.recursive = recursive;
+	}
+
+	public void register(Path arg) throws IOException {
+
+		Path p = arg.toAbsolutePath().normalize();
+
+		if(!Files.isDirectory(p)){
+
+			files.add(p);
+			watch(p.getParent(), null);
+			return;
+		}
+
+		if(!recursive){
+
+			watch(p, p);
+			return;
+		}
+
+		tree(p, p);
+	}
+
+	// runs rounds until the thread is interrupted
+	public void run(Round round) throws IOException {
+
+		try {
+
+			while(!keys.isEmpty()){
+
+				Map<Path, Path> changed = new LinkedHashMap<>();
+
+				for(WatchKey key = service.take(); key != null; key = service.poll(debounce, TimeUnit.MILLISECONDS))
+					collect(key, changed);
+
+				if(!changed.isEmpty()){
+
+					Log.info(() -> changed.size() + " changed");
+					round.run(changed);
+				}
+			}
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		service.close();
+	}
+
+	private void tree(Path dir, Path root) throws IOException {
+
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>(){
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+
+				watch(d, root);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void watch(Path dir, Path root) throws IOException {
+
+		keys.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY), dir);
+
+		if(root != null)
+			roots.put(dir, root);
+	}
+
+	private void collect(WatchKey key, Map<Path, Path> changed) throws IOException {
+
+		Path dir = keys.get(key);
+
+		for(WatchEvent<?> event : key.pollEvents()){
+
+			// events were lost, anything in the directory may have changed
+			if(event.kind() == OVERFLOW){
+
+				try(Stream<Path> list = Files.list(dir)){
+					list.forEach(p -> changed(dir, p, changed));
+				}
+				continue;
+			}
+
+			Path p = dir.resolve((Path) event.context());
+
+			// a new directory in a walk is watched too, along with whatever was already moved into it
+			if(event.kind() == ENTRY_CREATE && recursive && roots.containsKey(dir) && Files.isDirectory(p)){
+
+				tree(p, roots.get(dir));
+
+				try(Stream<Path> walk = Files.walk(p)){
+					walk.forEach(f -> changed(f.getParent(), f, changed));
+				}
+
+				continue;
+			}
+
+			changed(dir, p, changed);
+		}
+
+		if(!key.reset())
+			keys.remove(key);
+	}
+
+	private void changed(Path dir, Path p, Map<Path, Path> changed) {
+
+		if(!Files.isRegularFile(p))
+			return;
+
+		Path root = roots.get(dir);
+
+		if(root != null)
+			changed.put(p, root);
+		else if(files.contains(p))
+			changed.put(p, null);
+	}
+}
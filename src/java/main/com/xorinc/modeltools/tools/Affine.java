@@ -0,0 +1,151 @@
+package com.xorinc.modeltools.tools;
+
+
+public final class Affine {
+
+	public static final Affine identity = new Affine(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0);
+
+	// sine and cosine of 0, 1, 2 and 3 quarter turns
+	private static final int[] QUARTER_SIN = { 0, 1, 0, -1 }, QUARTER_COS = { 1, 0, -1, 0 };
+
+	// row major 4x4 matrix, the last row is always 0 0 0 1
+	private final double m00, m01, m02, m03;
+	private final double m10, m11, m12, m13;
+	private final double m20, m21, m22, m23;
+
+	// when each row has one coefficient, as in quarter turns, scales and translations, the axis each row takes
+	// and its coefficient. x is -1 otherwise
+	private final int x, y, z;
+	private final double fx, fy, fz;
+
+	private Affine(double m00, double m01, double m02, double m03,
+				   double m10, double m11, double m12, double m13,
+				   double m20, double m21, double m22, double m23){
+
+		this.m00 = m00; this.m01 = m01; this.m02 = m02; this.m03 = m03;
+		this.m10 = m10; this.m11 = m11; this.m12 = m12; this.m13 = m13;
+		this.m20 = m20; this.m21 = m21; this.m22 = m22; this.m23 = m23;
+
+		int x = single(m00, m01, m02), y = single(m10, m11, m12), z = single(m20, m21, m22);
+		boolean sparse = x >= 0 && y >= 0 && z >= 0;
+
+		this.x = sparse ? x : -1;
+		this.y = y;
+		this.z = z;
+		this.fx = sparse ? pick(x, m00, m01, m02) : 0;
+		this.fy = sparse ? pick(y, m10, m11, m12) : 0;
+		this.fz = sparse ? pick(z, m20, m21, m22) : 0;
+	}
+
+	// the index of the only nonzero one, or -1
+	private static int single(double a, double b, double c) {
+
+		if(b == 0 && c == 0)
+			return a == 0 ? -1 : 0;
+
+		if(a == 0 && c == 0)
+			return 1;
+
+		return a == 0 && b == 0 ? 2 : -1;
+	}
+
+	private static double pick(int i, double a, double b, double c) {
+
+		return i == 0 ? a : i == 1 ? b : c;
+	}
+
+	public static Affine translate(double x, double y, double z) {
+
+		return new Affine(1, 0, 0, x, 0, 1, 0, y, 0, 0, 1, z);
+	}
+
+	public static Affine scale(double magnitude, double ox, double oy, double oz) {
+
+		return translate(-ox, -oy, -oz)
+				.then(new Affine(magnitude, 0, 0, 0, 0, magnitude, 0, 0, 0, 0, magnitude, 0))
+				.then(translate(ox, oy, oz));
+	}
+
+	public static Affine rotate(char axis, double degrees, double ox, double oy, double oz) {
+
+		double sin, cos;
+
+		// quarter turns come from the table, so they're exact
+		if(degrees % 90 == 0){
+
+			int turns = (int) Math.floorMod((long) (degrees / 90), 4L);
+
+			sin = QUARTER_SIN[turns];
+			cos = QUARTER_COS[turns];
+
+		} else {
+
+			double theta = Math.toRadians(degrees);
+
+			sin = Math.sin(theta);
+			cos = Math.cos(theta);
+		}
+
+		Affine r;
+
+		switch(Character.toLowerCase(axis)) {
+
+		case 'x': r = new Affine(1, 0, 0, 0, 0, cos, -sin, 0, 0, sin, cos, 0); break;
+		case 'y': r = new Affine(cos, 0, -sin, 0, 0, 1, 0, 0, sin, 0, cos, 0); break;
+		case 'z': r = new Affine(cos, -sin, 0, 0, sin, cos, 0, 0, 0, 0, 1, 0); break;
+
+		default: throw new IllegalArgumentException("no such axis: " + axis);
+		}
+
+		return translate(-ox, -oy, -oz).then(r).then(translate(ox, oy, oz));
+	}
+
+	// the transform that applies this one, then next
+	public Affine then(Affine next) {
+
+		Affine n = next;
+
+		return new Affine(
+				n.m00 * m00 + n.m01 * m10 + n.m02 * m20,
+				n.m00 * m01 + n.m01 * m11 + n.m02 * m21,
+				n.m00 * m02 + n.m01 * m12 + n.m02 * m22,
+				n.m00 * m03 + n.m01 * m13 + n.m02 * m23 + n.m03,
+
+				n.m10 * m00 + n.m11 * m10 + n.m12 * m20,
+				n.m10 * m01 + n.m11 * m11 + n.m12 * m21,
+				n.m10 * m02 + n.m11 * m12 + n.m12 * m22,
+				n.m10 * m03 + n.m11 * m13 + n.m12 * m23 + n.m13,
+
+				n.m20 * m00 + n.m21 * m10 + n.m22 * m20,
+				n.m20 * m01 + n.m21 * m11 + n.m22 * m21,
+				n.m20 * m02 + n.m21 * m12 + n.m22 * m22,
+				n.m20 * m03 + n.m21 * m13 + n.m22 * m23 + n.m23);
+	}
+
+	// transforms the point at v[off..off+2] in place
+	public void apply(double[] v, int off) {
+
+		// one multiply and add per axis
+		if(this.x >= 0){
+
+			double x = v[off + this.x], y = v[off + this.y], z = v[off + this.z];
+
+			v[off]     = fx * x + m03;
+			v[off + 1] = fy * y + m13;
+			v[off + 2] = fz * z + m23;
+			return;
+		}
+
+		double x = v[off], y = v[off + 1], z = v[off + 2];
+
+		v[off]     = m00 * x + m01 * y + m02 * z + m03;
+		v[off + 1] = m10 * x + m11 * y + m12 * z + m13;
+		v[off + 2] = m20 * x + m21 * y + m22 * z + m23;
+	}
+
+	public String toString() {
+
+		return String.format("[ [ %s, %s, %s, %s ], [ %s, %s, %s, %s ], [ %s, %s, %s, %s ] ]",
+				m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23);
+	}
+}
@@ -0,0 +1,218 @@
+package com.xorinc.modeltools.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.xorinc.modeltools.Face;
+import com.xorinc.modeltools.JsonFormatter;
+import com.xorinc.modeltools.Log;
+import com.xorinc.modeltools.Log.Level;
+import com.xorinc.modeltools.Main;
+import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.Model;
+
+
+public class AffineChain {
+
+	private final List<Pipeline.Stage> stages;
+	private final Affine transform;
+
+	public AffineChain(List<Pipeline.Stage> stages){
+
+		Affine transform = Affine.identity;
+
+		for(Pipeline.Stage s : stages)
+			transform = transform.then(transform(s));
+
+		this.stages = ImmutableList.copyOf(stages);
+		this.transform = transform;
+
+		Log.info(() -> "transform: " + this.transform);
+	}
+
+	public void apply(Model m) throws ToolException {
+
+		if(!m.hasElements())
+			throw new ToolException("Malformed model format!");
+
+		double[] v = new double[6];
+
+		// faces need the coordinates from before the transform, so they all go first
+		for(int i = 0; i < m.size; i++)
+			faces(m, i, v);
+
+		transform(m, 0, m.size);
+	}
+
+	// reads and writes one element at a time, so memory is bounded by the largest element, not the model
+	public void stream(Reader in, Writer out) throws IOException, ToolException {
+
+		JsonParser parser = new JsonParser();
+		JsonReader r = new JsonReader(in);
+		JsonFormatter f = Main.formatter(out);
+		Model m = new Model();
+		double[] v = new double[6];
+
+		r.setLenient(true);
+
+		try {
+
+			r.beginObject();
+			f.beginObject();
+
+			while(r.hasNext()){
+
+				String name = r.nextName();
+
+				if(name.equals("elements") && r.peek() == JsonToken.BEGIN_ARRAY){
+
+					r.beginArray();
+					f.beginArray(name);
+
+					while(r.hasNext()){
+
+						m.clear();
+						m.readElement(r);
+
+						faces(m, 0, v);
+						transform(m, 0, 1);
+
+						f.element(m, 0);
+					}
+
+					r.endArray();
+					f.end();
+
+				} else {
+
+					f.member(name, parser.parse(r));
+				}
+			}
+
+			r.endObject();
+			f.end();
+
+		} catch (MalformedJsonException | JsonParseException | IllegalStateException e) {
+
+			throw new ToolException("Malformed model format!");
+		}
+	}
+
+	// fills in missing uvs and lets each stage move faces around, v is scratch for the element's from and to
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void faces(Model m, int i, double[] v) throws ToolException {
+
+		int flags = m.flags[i];
+
+		if(!m.has(i, Model.HAS_FROM | Model.HAS_TO) || m.has(i, Model.HAS_ROTATION) && !m.has(i, Model.HAS_ORIGIN))
+			throw new ToolException("Malformed model format!");
+
+		System.arraycopy(m.from, 3 * i, v, 0, 3);
+		System.arraycopy(m.to, 3 * i, v, 3, 3);
+
+		// checked once per element, with tracing off nothing is built for diagnostics
+		boolean trace = Log.enabled(Level.TRACE);
+
+		if(trace){
+			Log.print("from:" + Model.vector(v, 0, 3));
+			Log.print("to:" + Model.vector(v, 3, 3));
+		}
+
+		if((flags & Model.HAS_FACES) == 0)
+			return;
+
+		// only the first stage ever sees a face without a uv
+		AffineTool first = (AffineTool) stages.get(0).tool;
+		int filled = 0;
+
+		for(int f = 0; f < 6; f++){
+
+			int k = 6 * i + f;
+
+			if(!m.hasFace(i, f) || (m.faceFlags[k] & Model.HAS_UV) != 0 || m.faceExtra[k] != null && m.faceExtra[k].get("uv") != null)
+				continue;
+
+			Face.of(f).project(v, first.flipsV(), m.uv, 4 * k);
+			m.faceFlags[k] = Model.HAS_UV;
+			filled |= 1 << f;
+
+			if(trace)
+				Log.print(Model.FACES[f] + " uv: " + Model.vector(m.uv, 4 * k, 4));
+		}
+
+		// faces that aren't one of the six get an empty uv, as there is nothing to project them from
+		if(m.otherFaces[i] != null){
+
+			for(Entry<String, JsonElement> e : m.otherFaces[i].entrySet()){
+
+				if(e.getValue().isJsonObject() && e.getValue().getAsJsonObject().get("uv") == null)
+					e.getValue().getAsJsonObject().add("uv", new JsonArray());
+			}
+		}
+
+		for(int s = 0; s < stages.size(); s++){
+
+			Pipeline.Stage stage = stages.get(s);
+			((AffineTool) stage.tool).remapFaces(m, i, (Tool.Args) stage.args, s == 0 ? filled : 0);
+		}
+	}
+
+	// one pass over the packed coordinates of elements start to end
+	private void transform(Model m, int start, int end) {
+
+		double[] from = m.from, to = m.to, origin = m.origin;
+		boolean trace = Log.enabled(Level.TRACE);
+
+		for(int i = start; i < end; i++){
+
+			int k = 3 * i;
+			boolean dx = from[k] > to[k], dy = from[k + 1] > to[k + 1], dz = from[k + 2] > to[k + 2];
+
+			transform.apply(from, k);
+			transform.apply(to, k);
+
+			// keep each axis ordered the way it was, whatever the transform did to it
+			ordered(from, to, k, dx);
+			ordered(from, to, k + 1, dy);
+			ordered(from, to, k + 2, dz);
+
+			if(m.has(i, Model.HAS_ROTATION))
+				transform.apply(origin, k);
+
+			m.flags[i] &= ~Model.GEOMETRY_INTS;
+
+			if(trace){
+				Log.print("new from:" + Model.vector(from, k, 3));
+				Log.print("new to:" + Model.vector(to, k, 3));
+
+				if(m.has(i, Model.HAS_ROTATION))
+					Log.print("new origin:" + Model.vector(origin, k, 3));
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Affine transform(Pipeline.Stage s) {
+
+		return ((AffineTool) s.tool).transform((Tool.Args) s.args);
+	}
+
+	private static void ordered(double[] from, double[] to, int k, boolean descending) {
+
+		double min = Math.min(from[k], to[k]), max = Math.max(from[k], to[k]);
+
+		from[k] = descending ? max : min;
+		to[k] = descending ? min : max;
+	}
+}
@@ -0,0 +1,33 @@
+package com.xorinc.modeltools.tools;
+
+import com.google.common.collect.ImmutableList;
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.Model;
+
+
+public interface AffineTool<T extends AffineTool<T>> extends Tool<T> {
+
+	Affine transform(Tool.Args<T> args);
+
+	// whether a uv it fills in for a side face counts v down from the top of the block, as Face.project does with flipV
+	default boolean flipsV() {
+
+		return false;
+	}
+
+	// filled has a bit set for each face of element i this stage filled a uv in for
+	default void remapFaces(Model m, int i, Tool.Args<T> args, int filled) {}
+
+	@Override
+	default void apply(Model model, Tool.Args<T> args, Context ctx) throws ToolException {
+
+		chain(args).apply(model);
+	}
+
+	@Override
+	default AffineChain chain(Tool.Args<T> args) {
+
+		return new AffineChain(ImmutableList.of(new Pipeline.Stage(this, args)));
+	}
+}
@@ -1,104 +1,190 @@
 package com.xorinc.modeltools.tools;
 
-import static com.xorinc.modeltools.Main.verbose;
-
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.OutputStreamWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import org.apache.commons.io.FileUtils;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 import com.google.gson.*;
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.JsonFormatter;
+import com.xorinc.modeltools.Log;
 import com.xorinc.modeltools.Main;
 import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.Model;
+import com.xorinc.modeltools.OutputCommitter;
 import com.xorinc.modeltools.Util;
 
+import joptsimple.ValueConversionException;
 import joptsimple.ValueConverter;
 
 
 public class Combine implements Tool<Combine> {
 
 	public static final Combine inst = new Combine();
-	public static final JsonParser jparser = new JsonParser();	
 	
 	private final Supplier<JsonObject> objCtr = JsonObject::new;
-	private final Supplier<JsonArray> arrCtr = JsonArray::new;
 	
 	@Override
-	public void execute(InputStream in, OutputStream out, Tool.Args<Combine> args) throws ToolException {
+	public void apply(Model model, Tool.Args<Combine> args, Context ctx) throws ToolException {
 
 		Args a = (Args) args;
 		
-		try(Reader r = new InputStreamReader(in); ) {
-						
-			JsonObject tree = new JsonParser().parse(r).getAsJsonObject();
+		if(ctx == null)
+			throw new ToolException("combine needs an output file to name its variants after");
+		
+		try {
+			
+			JsonObject textures = Util.getOrElse(model.members.getAsJsonObject("textures"), objCtr);
+			String base = FileUtils.removeExtension(ctx.out.getName());
+			long count = a.end - a.start;
+			AtomicLong done = new AtomicLong(), failed = new AtomicLong();
 			
-			verbose(tree);
+			// everything a variant shares is serialized once up front, a variant is then just these strings
+			// spliced together around its own textures. null members are where the textures go
+			int size = model.members.entrySet().size();
+			String[] members = new String[size];
+			int texturesAt = size, k = 0;
+			
+			for(Entry<String, JsonElement> e : model.members.entrySet()){
+				
+				if(e.getKey().equals("textures"))
+					texturesAt = k;
+				else if(!e.getValue().isJsonNull())
+					members[k] = fragment(f -> f.fragment(e.getKey(), e.getValue(), 1));
+				
+				k++;
+			}
 			
-			JsonObject textures = Util.getOrElse(tree.getAsJsonObject("textures"), objCtr);
-			JsonArray elements =  Util.getOrElse(tree.getAsJsonArray("elements"), arrCtr);
+			int elementsAt = model.hasElements() ? model.elementsAt : size;
+			String elements = fragment(f -> f.fragment(model, 2));
+			// each part is looked up once a variant needs it, and then only once per run
+			Map<File, PartCache.Part> parts = new ConcurrentHashMap<>();
 			
-			Set<List<Entry<String, JsonObject>>> product = Sets.cartesianProduct(a.elements.stream().map(Map::entrySet).collect(Collectors.toList()));
+			Log.info(() -> String.format("combine: variants %d to %d of %d", a.start, a.end, a.total));
 			
-			verbose(product);
+			int t = texturesAt;
 			
-			product.stream().forEach(l -> {
+			// variants are built from their index alone, so only the ones being written are ever in memory,
+			// and they go to whichever pool ran the tool, -j sets how many are written at once
+			LongStream.range(a.start, a.end).parallel().forEach(v -> {
 				
-				StringBuilder name = new StringBuilder(FileUtils.removeExtension(Main.currentOut.getName()));
+				List<Entry<String, File>> l = a.variant(v);
+				List<PartCache.Part> used = new ArrayList<>(l.size());
+				StringBuilder name = new StringBuilder(base);
 				JsonObject newTex = new JsonObject();
-				JsonArray newEl = new JsonArray();
 				textures.entrySet().forEach(e -> newTex.add(e.getKey(), e.getValue()));
-				newEl.addAll(elements);
 				
 				l.forEach(e -> {
 					
-					JsonObject tree_ = Util.getOrElse(e.getValue(), objCtr);
-					
-					JsonObject textures_ = Util.getOrElse(tree_.getAsJsonObject("textures"), objCtr);
-					JsonArray elements_ =  Util.getOrElse(tree_.getAsJsonArray("elements"), arrCtr);
+					PartCache.Part part = parts.computeIfAbsent(e.getValue(), PartCache::get);
 					
 					name.append("_" + e.getKey());
-					textures_.entrySet().forEach(e1 -> newTex.add(e1.getKey(), e1.getValue()));
-					newEl.addAll(elements_);
+					part.textures.entrySet().forEach(e1 -> newTex.add(e1.getKey(), e1.getValue()));
+					used.add(part);
 				});
 				
-				tree.add("elements", newEl);
-				tree.add("textures", newTex);
+				Log.debug(() -> name);
+				Log.debug(() -> newTex);
 				
-				verbose(name);
-				verbose(newTex);
+				File out = new File(ctx.out.getParentFile(), name + ".json");
 				
-				try(Writer w = new FileWriter(new File(Main.currentOut.getParentFile(), name + ".json"))){
+				// each variant is there whole or not at all
+				try(OutputCommitter commit = new OutputCommitter(out.toPath())){
+					
+					try(Writer w = new BufferedWriter(new OutputStreamWriter(commit.stream()))){
+						
+						JsonFormatter f = Main.formatter(w);
+						f.beginObject();
+						
+						for(int m = 0; m <= size; m++){
+							
+							if(m == elementsAt){
+								
+								f.beginArray("elements");
+								
+								if(!elements.isEmpty())
+									f.raw(elements);
+								
+								for(PartCache.Part part : used){
+									
+									if(!part.elements.isEmpty())
+										f.raw(part.elements);
+								}
+								
+								f.end();
+							}
+							
+							if(m == t)
+								f.member("textures", newTex);
+							
+							if(m < size && members[m] != null)
+								f.raw(members[m]);
+						}
+						
+						f.end();
+						
+					}
+					
+					commit.commit();
 					
-					Main.writeFormatted(tree, w);
 				} catch (IOException e) {
-					e.printStackTrace();
+					
+					Main.err.printf("Error writing variant `%s': %s%n", out, e.getMessage());
+					failed.incrementAndGet();
 				}
+				
+				long n = done.incrementAndGet();
+				
+				if(n % 1000 == 0)
+					Log.info(() -> String.format("combine: %d/%d", n, count));
 			});
 			
+			Log.info(() -> "part cache: " + PartCache.stats());
+			
+			if(failed.get() > 0)
+				throw new ToolException(failed.get() + " variants couldn't be written");
+			
 		} catch (NullPointerException | ClassCastException e) {
 			
 			throw new ToolException("Malformed model format!");
+		}
+		
+	}
+	
+	private interface Fragment {
+		
+		void write(JsonFormatter f) throws IOException;
+	}
+	
+	private static String fragment(Fragment fragment) {
+		
+		StringWriter w = new StringWriter();
+		
+		try {
+			fragment.write(Main.formatter(w));
 		} catch (IOException e) {
-			
-			throw new ToolException("IOException:" + e.getMessage());
+			// StringWriter doesn't throw
+			throw new AssertionError(e);
 		}
 		
+		return w.toString();
 	}
 
 	@Override
@@ -109,16 +195,58 @@ public class Combine implements Tool<Combine> {
 
 	public static class Args implements Tool.Args<Combine> {
 		
-		public final List<Map<String, JsonObject>> elements;
+		public final List<Map<String, File>> elements;
+		// the whole product, and the part of it this shard writes
+		public final long total, start, end;
+		
+		private final List<List<Entry<String, File>>> groups;
 		
-		Args(List<Map<String, JsonObject>> elements){
+		Args(List<Map<String, File>> elements, int shard, int shards){
+			
 			this.elements = elements;
+			this.groups = elements.stream().map(m -> ImmutableList.copyOf(m.entrySet())).collect(Collectors.toList());
+			
+			long total = 1;
+			
+			for(Map<String, File> m : elements)
+				total = Math.multiplyExact(total, m.size());
+			
+			this.total = total;
+			this.start = bound(total, shard - 1, shards);
+			this.end = bound(total, shard, shards);
+		}
+		
+		// the variant's group choices, in the order Sets.cartesianProduct would have listed them
+		public List<Entry<String, File>> variant(long index) {
+			
+			List<Entry<String, File>> parts = new ArrayList<>(Collections.nCopies(groups.size(), null));
+			
+			for(int g = parts.size() - 1; g >= 0; g--){
+				
+				List<Entry<String, File>> group = groups.get(g);
+				parts.set(g, group.get((int) (index % group.size())));
+				index /= group.size();
+			}
+			
+			return parts;
+		}
+		
+		// splits total into n contiguous runs whose sizes differ by at most one
+		private static long bound(long total, int k, int n) {
+			
+			return k * (total / n) + Math.min(k, total % n);
 		}
 		
 		public String toString() {
 			
 			return elements.toString();
 		}
+		
+		@Override
+		public String key() {
+			
+			return elements + ";" + start + "-" + end + "/" + total;
+		}
 	}
 	
 	private final ValueConverter<Args> parser = new ValueConverter<Args>() {
@@ -128,27 +256,41 @@ public class Combine implements Tool<Combine> {
 		@Override
 		public Args convert(String s) {
 
-			ImmutableList.Builder<Map<String, JsonObject>> list = ImmutableList.builder();
+			ImmutableList.Builder<Map<String, File>> list = ImmutableList.builder();
 			
 			for(String s2 : s.split("(?<!////) ")){
 				
-				ImmutableMap.Builder<String, JsonObject> map = ImmutableMap.builder();
+				ImmutableMap.Builder<String, File> map = ImmutableMap.builder();
 				
+				// only checked for here, parts are read when a variant first uses them
 				for(String s3 : s2.split("(?<!////),")){
-					File f = new File(s3);
-					try(Reader r = new FileReader(f)){
-						map.put(FileUtils.removeExtension(f.getName()), jparser.parse(r).getAsJsonObject());
-					}
-					catch (Exception e) {
-						map.put(FileUtils.removeExtension(f.getName()), null);
-					}
 					
+					File f = Main.resolve(new File(s3));
+					
+					if(!f.isFile())
+						throw new ValueConversionException("No such part file: " + s3);
+					
+					map.put(FileUtils.removeExtension(f.getName()), f);
 				}
 				
 				list.add(map.build());
 			}
 			
-			return new Args(list.build());
+			Args a;
+			
+			try {
+				a = new Args(list.build(), Main.shard(), Main.shards());
+				
+			} catch (ArithmeticException e){
+				
+				throw new ValueConversionException("combine would write more than " + Long.MAX_VALUE + " variants");
+			}
+			
+			// checked here so nothing has been written yet when it fails
+			if(a.end - a.start > Main.maxVariants())
+				throw new ValueConversionException(String.format("combine would write %d variants, more than --max-variants %d. Raise it, or split the work with --shard.", a.end - a.start, Main.maxVariants()));
+			
+			return a;
 		}
 
 		@Override
@@ -168,7 +310,7 @@ public class Combine implements Tool<Combine> {
 	@Override
 	public boolean multifile() {
 
-		return false;
+		return true;
 	}
 	
 }
@@ -0,0 +1,412 @@
+package com.xorinc.modeltools.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import joptsimple.ValueConverter;
+
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.Face;
+import com.xorinc.modeltools.Main;
+import com.xorinc.modeltools.Model;
+import com.xorinc.modeltools.SpatialIndex;
+
+
+// Makes models built out of many boxes cheaper to draw: boxes that meet face to face and would look
+// the same as one are merged, then faces that are covered by other boxes are dropped.
+// Every box is taken to be opaque. Rotated elements are left as they are and hide nothing.
+public class Optimize implements Tool<Optimize> {
+
+	public static final Optimize inst = new Optimize();
+
+	// the faces at either end of each axis
+	private static final int[] NEAR = { Model.WEST, Model.DOWN, Model.NORTH }, FAR = { Model.EAST, Model.UP, Model.SOUTH };
+
+	// most boxes over one face that are checked piece by piece
+	private static final int MAX_COVER = 64;
+
+	private static final double EPSILON = 1e-9;
+
+	@Override
+	public void apply(Model m, Tool.Args<Optimize> args, Context ctx) {
+
+		int elements = m.size, faces = faces(m);
+
+		merge(m);
+		cull(m);
+
+		Main.out.printf("%s: %d elements, %d faces -> %d elements, %d faces%n", ctx == null || ctx.in == null ? "-" : ctx.in, elements, faces, m.size, faces(m));
+	}
+
+	@Override
+	public ValueConverter<Args> getParser() {
+
+		return null;
+	}
+
+	public static class Args implements Tool.Args<Optimize> {
+
+		@Override
+		public String key() {
+
+			return "";
+		}
+	}
+
+	private static int faces(Model m) {
+
+		int n = 0;
+
+		for(int i = 0; i < m.size; i++){
+			for(int f = 0; f < 6; f++){
+				if(m.hasFace(i, f))
+					n++;
+			}
+		}
+
+		return n;
+	}
+
+	// an axis aligned box, from <= to. rotations by 0 don't count
+	private static boolean box(Model m, int i) {
+
+		if(!m.has(i, Model.HAS_FROM | Model.HAS_TO) || m.has(i, Model.HAS_ROTATION) && m.angle[i] != 0)
+			return false;
+
+		for(int a = 0; a < 3; a++){
+			if(m.from[3 * i + a] > m.to[3 * i + a])
+				return false;
+		}
+
+		return true;
+	}
+
+	private static void merge(Model m) {
+
+		BitSet removed = new BitSet();
+
+		for(boolean changed = true; changed; ){
+
+			changed = false;
+
+			for(int a = 0; a < 3; a++)
+				changed |= merge(m, a, removed);
+		}
+
+		m.remove(removed);
+	}
+
+	// merges runs of boxes along a, each into the first of the run
+	private static boolean merge(Model m, int a, BitSet removed) {
+
+		// boxes by where they start along a and their cross section
+		Map<Slab, Integer> starts = new HashMap<>();
+		List<Integer> boxes = new ArrayList<>();
+
+		for(int i = 0; i < m.size; i++){
+
+			if(removed.get(i) || !box(m, i) || m.otherFaces[i] != null || m.from[3 * i + a] == m.to[3 * i + a])
+				continue;
+
+			starts.putIfAbsent(new Slab(m, i, a, m.from[3 * i + a]), i);
+			boxes.add(i);
+		}
+
+		boxes.sort(Comparator.comparingDouble(i -> m.from[3 * i + a]));
+
+		boolean changed = false;
+
+		for(int i : boxes){
+
+			if(removed.get(i))
+				continue;
+
+			for(;;){
+
+				Slab next = new Slab(m, i, a, m.to[3 * i + a]);
+				Integer j = starts.get(next);
+
+				if(j == null || removed.get(j) || !mergeable(m, i, j, a))
+					break;
+
+				starts.remove(next);
+				join(m, i, j, a);
+				removed.set(j);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	// whether j, which starts where i ends along a, looks like more of i
+	private static boolean mergeable(Model m, int i, int j, int a) {
+
+		if(!Objects.equals(m.extra[i], m.extra[j]))
+			return false;
+
+		boolean closed = m.hasFace(i, NEAR[a]) && m.hasFace(j, FAR[a]);
+
+		for(int f = 0; f < 6; f++){
+
+			if(Face.of(f).axis == a)
+				continue;
+
+			boolean has = m.hasFace(i, f);
+
+			if(has != m.hasFace(j, f) || has && !lineUp(m, i, j, f, a))
+				return false;
+
+			closed &= has;
+		}
+
+		// the faces between them go, which can only be seen from inside an open box
+		return closed || !m.hasFace(i, FAR[a]) && !m.hasFace(j, NEAR[a]);
+	}
+
+	private static boolean lineUp(Model m, int i, int j, int f, int a) {
+
+		int ki = 6 * i + f, kj = 6 * j + f;
+
+		if(!Objects.equals(m.texture[ki], m.texture[kj]) || !Objects.equals(m.cullface[ki], m.cullface[kj]) || m.tintindex[ki] != m.tintindex[kj])
+			return false;
+
+		// a turned uv runs along other axes
+		if(!upright(m.rotation[ki]) || !upright(m.rotation[kj]) || m.faceExtra[ki] != null || m.faceExtra[kj] != null)
+			return false;
+
+		Face face = Face.of(f);
+		double[] ui = uv(m, i, f), uj = uv(m, j, f);
+
+		for(int t = 0; t < 2; t++){
+
+			boolean flip = t == 0 ? face.uFlipped : face.vFlipped;
+
+			// across a both boxes are the same, so their uv must be too
+			if((t == 0 ? face.u : face.v) != a){
+
+				if(ui[t] != uj[t] || ui[t + 2] != uj[t + 2])
+					return false;
+
+				continue;
+			}
+
+			// along a, j's uv must go on from where i's ends, at the same scale
+			double iLo = ui[flip ? t + 2 : t], iHi = ui[flip ? t : t + 2];
+			double jLo = uj[flip ? t + 2 : t], jHi = uj[flip ? t : t + 2];
+			double li = m.to[3 * i + a] - m.from[3 * i + a], lj = m.to[3 * j + a] - m.from[3 * j + a];
+
+			if(iHi != jLo || Math.abs((iHi - iLo) * lj - (jHi - jLo) * li) > EPSILON)
+				return false;
+		}
+
+		return true;
+	}
+
+	private static boolean upright(int rotation) {
+
+		return rotation == Model.NONE || rotation == 0;
+	}
+
+	// a face's uv, or the one the game would make up for it
+	private static double[] uv(Model m, int i, int f) {
+
+		int k = 6 * i + f;
+
+		if((m.faceFlags[k] & Model.HAS_UV) != 0)
+			return Arrays.copyOfRange(m.uv, 4 * k, 4 * k + 4);
+
+		double[] box = new double[6], uv = new double[4];
+
+		System.arraycopy(m.from, 3 * i, box, 0, 3);
+		System.arraycopy(m.to, 3 * i, box, 3, 3);
+		Face.of(f).gameUV(box, uv, 0);
+
+		return uv;
+	}
+
+	// grows i over j, which starts where i ends along a
+	private static void join(Model m, int i, int j, int a) {
+
+		for(int f = 0; f < 6; f++){
+
+			int ki = 6 * i + f, kj = 6 * j + f;
+
+			// faces without a uv get theirs made up from the new size
+			if(Face.of(f).axis == a || !m.hasFace(i, f) || ((m.faceFlags[ki] | m.faceFlags[kj]) & Model.HAS_UV) == 0)
+				continue;
+
+			Face face = Face.of(f);
+			double[] ui = uv(m, i, f), uj = uv(m, j, f);
+			int t = face.u == a ? 0 : 1;
+			// the end of the uv that's at the far end of a comes from j
+			int far = (t == 0 ? face.uFlipped : face.vFlipped) ? t : t + 2;
+			int ints = (m.faceFlags[ki] & Model.HAS_UV) != 0 ? m.faceFlags[ki] & 0xf : 0;
+			int farInt = (m.faceFlags[kj] & Model.HAS_UV) != 0 ? m.faceFlags[kj] & 1 << far : 0;
+
+			ui[far] = uj[far];
+			System.arraycopy(ui, 0, m.uv, 4 * ki, 4);
+			m.faceFlags[ki] = (byte) (Model.HAS_UV | ints & ~(1 << far) | farInt);
+		}
+
+		// i's face at the far end is j's
+		int end = FAR[a];
+
+		if(m.hasFace(j, end)){
+			m.addFace(i, end);
+			m.copyFace(6 * j + end, 6 * i + end);
+		} else {
+			m.removeFace(i, end);
+		}
+
+		m.to[3 * i + a] = m.to[3 * j + a];
+		m.flags[i] = m.flags[i] & ~(1 << (Model.TO_INTS + a)) | m.flags[j] & 1 << (Model.TO_INTS + a);
+	}
+
+	private static void cull(Model m) {
+
+		// boxes that hide what's behind them: solid, and closed on every side
+		BitSet solid = new BitSet();
+
+		for(int i = 0; i < m.size; i++){
+
+			if(!box(m, i))
+				continue;
+
+			boolean closed = true;
+
+			for(int f = 0; f < 6 && closed; f++)
+				closed = m.hasFace(i, f) && m.from[3 * i + Face.of(f).axis] < m.to[3 * i + Face.of(f).axis];
+
+			if(closed)
+				solid.set(i);
+		}
+
+		SpatialIndex index = new SpatialIndex(m, solid);
+		List<double[]> cover = new ArrayList<>();
+		BitSet hidden = new BitSet(6 * m.size);
+
+		// decided over the faces as they were, then dropped
+		for(int i = 0; i < m.size; i++){
+
+			if(!box(m, i))
+				continue;
+
+			for(int f = 0; f < 6; f++){
+				if(m.hasFace(i, f) && hidden(m, index, i, f, cover))
+					hidden.set(6 * i + f);
+			}
+		}
+
+		for(int k = hidden.nextSetBit(0); k >= 0; k = hidden.nextSetBit(k + 1))
+			m.removeFace(k / 6, k % 6);
+	}
+
+	// whether i's face f is covered by solid boxes right in front of it
+	private static boolean hidden(Model m, SpatialIndex index, int i, int f, List<double[]> cover) {
+
+		int a = Face.of(f).axis, b = (a + 1) % 3, c = (a + 2) % 3;
+		double b0 = m.from[3 * i + b], b1 = m.to[3 * i + b], c0 = m.from[3 * i + c], c1 = m.to[3 * i + c];
+
+		if(b0 == b1 || c0 == c1)
+			return false;
+
+		cover.clear();
+
+		// one box over all of it is enough, and usual
+		boolean whole = index.adjacent(i, f, j -> {
+
+			double jb0 = Math.max(b0, m.from[3 * j + b]), jb1 = Math.min(b1, m.to[3 * j + b]);
+			double jc0 = Math.max(c0, m.from[3 * j + c]), jc1 = Math.min(c1, m.to[3 * j + c]);
+
+			if(jb0 == b0 && jc0 == c0 && jb1 == b1 && jc1 == c1)
+				return true;
+
+			if(cover.size() <= MAX_COVER)
+				cover.add(new double[] { jb0, jc0, jb1, jc1 });
+
+			return false;
+		});
+
+		return whole || covered(b0, c0, b1, c1, cover);
+	}
+
+	// whether the rectangles, all inside [b0, b1] x [c0, c1], cover it
+	private static boolean covered(double b0, double c0, double b1, double c1, List<double[]> cover) {
+
+		if(cover.size() < 2 || cover.size() > MAX_COVER)
+			return false;
+
+		// cut the face up at every rectangle's edges, each piece is then in a rectangle or not at all
+		double[] bs = edges(cover, 0, b0, b1), cs = edges(cover, 1, c0, c1);
+
+		for(int x = 0; x + 1 < bs.length; x++){
+
+			double mb = (bs[x] + bs[x + 1]) / 2;
+
+			for(int y = 0; y + 1 < cs.length; y++){
+
+				double mc = (cs[y] + cs[y + 1]) / 2;
+				boolean in = false;
+
+				for(int r = 0; r < cover.size() && !in; r++){
+
+					double[] rect = cover.get(r);
+					in = rect[0] <= mb && mb <= rect[2] && rect[1] <= mc && mc <= rect[3];
+				}
+
+				if(!in)
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static double[] edges(List<double[]> cover, int off, double lo, double hi) {
+
+		return IntStream.range(0, 2 * cover.size() + 2)
+			.mapToDouble(n -> n < 2 ? (n == 0 ? lo : hi) : cover.get((n - 2) / 2)[off + 2 * (n % 2)])
+			.sorted().distinct().toArray();
+	}
+
+	// a cross section of a box at a point along an axis
+	private static final class Slab {
+
+		final double at, b0, b1, c0, c1;
+
+		Slab(Model m, int i, int a, double at){
+
+			int b = (a + 1) % 3, c = (a + 2) % 3;
+
+			this.at = at;
+			this.b0 = m.from[3 * i + b];
+			this.b1 = m.to[3 * i + b];
+			this.c0 = m.from[3 * i + c];
+			this.c1 = m.to[3 * i + c];
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if(!(o instanceof Slab))
+				return false;
+
+			Slab s = (Slab) o;
+			return at == s.at && b0 == s.b0 && b1 == s.b1 && c0 == s.c0 && c1 == s.c1;
+		}
+
+		@Override
+		public int hashCode() {
+
+			return Arrays.hashCode(new double[] { at, b0, b1, c0, c1 });
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.xorinc.modeltools.tools;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.gson.JsonObject;
+import com.xorinc.modeltools.Main;
+import com.xorinc.modeltools.Model;
+import com.xorinc.modeltools.Util;
+
+
+// Combine's parts, parsed and serialized once and kept across runs, so a daemon or a batch
+// going over the same part library reads each part a single time.
+// Entries are keyed by path, size and mtime, an edited part is simply a new entry.
+final class PartCache {
+
+	// in chars of serialized elements, which is most of what an entry holds
+	private static final long MAX_WEIGHT = 64L << 20;
+
+	static final Part EMPTY = new Part(new JsonObject(), "");
+
+	private static final LoadingCache<Key, Part> cache = CacheBuilder.newBuilder()
+		.maximumWeight(MAX_WEIGHT)
+		.weigher((Key k, Part p) -> p.elements.length() + 64)
+		.recordStats()
+		.build(new CacheLoader<Key, Part>() {
+
+			@Override
+			public Part load(Key k) throws IOException {
+
+				return PartCache.load(k);
+			}
+		});
+
+	private PartCache(){}
+
+	// a part that can't be read is reported and left out of its variants, as if it were empty
+	static Part get(File f) {
+
+		try {
+			return cache.get(new Key(f, Main.indent(), Main.grid()));
+
+		} catch (ExecutionException | RuntimeException e) {
+
+			Main.err.printf("Error reading part `%s': %s%n", f, Throwables.getRootCause(e));
+			return EMPTY;
+		}
+	}
+
+	static CacheStats stats() {
+
+		return cache.stats();
+	}
+
+	private static Part load(Key k) throws IOException {
+
+		Model m;
+
+		try(Reader r = new FileReader(k.file)){
+			m = Model.read(r);
+		}
+
+		JsonObject textures = Util.getOrElse(m.members.getAsJsonObject("textures"), () -> new JsonObject());
+		StringWriter w = new StringWriter();
+
+		// written as they sit in a variant, inside the model and its elements array
+		Main.formatter(w).fragment(m, 2);
+
+		return new Part(textures, w.toString());
+	}
+
+	static final class Part {
+
+		final JsonObject textures;
+		final String elements;
+
+		Part(JsonObject textures, String elements){
+			this.textures = textures;
+			this.elements = elements;
+		}
+	}
+
+	private static final class Key {
+
+		final File file;
+		final long size, modified;
+		// fragments are written with them
+		final String indent;
+		final int grid;
+
+		Key(File file, String indent, int grid){
+			this.file = file.getAbsoluteFile();
+			this.size = file.length();
+			this.modified = file.lastModified();
+			this.indent = indent;
+			this.grid = grid;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if(!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+			return file.equals(k.file) && size == k.size && modified == k.modified && Objects.equals(indent, k.indent) && grid == k.grid;
+		}
+
+		@Override
+		public int hashCode() {
+
+			return Objects.hash(file, size, modified, indent, grid);
+		}
+	}
+}
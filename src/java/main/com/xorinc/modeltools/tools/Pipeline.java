@@ -0,0 +1,129 @@
+package com.xorinc.modeltools.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableList;
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.Log;
+import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.Model;
+
+import joptsimple.ValueConversionException;
+import joptsimple.ValueConverter;
+
+
+public class Pipeline implements Tool<Pipeline> {
+
+	public static final Pipeline inst = new Pipeline();
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void apply(Model model, Tool.Args<Pipeline> args, Context ctx) throws ToolException {
+
+		Args a = (Args) args;
+		List<Stage> run = new ArrayList<>();
+
+		for(Stage s : a.stages){
+
+			Log.info(() -> "stage: " + s);
+
+			// consecutive geometric stages are folded into one transform
+			if(s.tool instanceof AffineTool){
+				run.add(s);
+				continue;
+			}
+
+			flush(run, model);
+			((Tool) s.tool).apply(model, s.args, ctx);
+		}
+
+		flush(run, model);
+	}
+
+	private void flush(List<Stage> run, Model model) throws ToolException {
+
+		if(run.isEmpty())
+			return;
+
+		new AffineChain(run).apply(model);
+		run.clear();
+	}
+
+	@Override
+	public AffineChain chain(Tool.Args<Pipeline> args) {
+
+		List<Stage> stages = ((Args) args).stages;
+
+		if(!stages.stream().allMatch(s -> s.tool instanceof AffineTool))
+			return null;
+
+		return new AffineChain(stages);
+	}
+
+	@Override
+	public ValueConverter<Args> getParser() {
+
+		return null;
+	}
+
+	public static class Stage {
+
+		public final Tool<?> tool;
+		public final Tool.Args<?> args;
+
+		public Stage(Tool<?> tool, Tool.Args<?> args){
+			this.tool = tool;
+			this.args = args;
+		}
+
+		public String name() {
+
+			return tool.getClass().getSimpleName().toLowerCase();
+		}
+
+		public String toString() {
+
+			return String.format("%s(%s)", name(), args);
+		}
+
+		public String key() {
+
+			return name() + "(" + (args == null ? "" : args.key()) + ")";
+		}
+	}
+
+	public static class Args implements Tool.Args<Pipeline> {
+
+		public final List<Stage> stages;
+
+		public Args(List<Stage> stages){
+
+			for(int i = 0; i < stages.size() - 1; i++){
+				if(stages.get(i).tool.multifile())
+					throw new ValueConversionException(stages.get(i).name() + " writes its own files and must be the last tool in a pipeline");
+			}
+
+			this.stages = ImmutableList.copyOf(stages);
+		}
+
+		public String toString() {
+
+			return stages.stream().map(Stage::toString).collect(Collectors.joining(" | "));
+		}
+
+		@Override
+		public String key() {
+
+			return stages.stream().map(Stage::key).collect(Collectors.joining(" | "));
+		}
+	}
+
+	@Override
+	public boolean multifile(Tool.Args<Pipeline> args) {
+
+		List<Stage> stages = ((Args) args).stages;
+		return !stages.isEmpty() && stages.get(stages.size() - 1).tool.multifile();
+	}
+}
@@ -1,14 +1,5 @@
 package com.xorinc.modeltools.tools;
 
-import static com.xorinc.modeltools.Main.verbose;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -21,9 +12,11 @@ import org.apache.commons.math3.linear.RealVector;
 
 import com.google.common.collect.ImmutableList;
 import com.google.gson.*;
-import com.xorinc.modeltools.Main;
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.Log;
+import com.xorinc.modeltools.Log.Level;
 import com.xorinc.modeltools.Main.ToolException;
-import com.xorinc.modeltools.Util;
+import com.xorinc.modeltools.Model;
 
 import joptsimple.ValueConversionException;
 import joptsimple.ValueConverter;
@@ -34,17 +27,15 @@ public class ResizeItem implements Tool<ResizeItem> {
 	public static final ResizeItem inst = new ResizeItem();
 		
 	@Override
-	public void execute(InputStream in, OutputStream out, Tool.Args<ResizeItem> args) throws ToolException {
+	public void apply(Model model, Tool.Args<ResizeItem> args, Context ctx) throws ToolException {
 
 		Args a = (Args) args;
 		
-		try(Reader r = new InputStreamReader(in); Writer w = new OutputStreamWriter(out)) {
+		try {
 			
-			JsonElement tree = new JsonParser().parse(r);
+			JsonObject display = model.members.getAsJsonObject("display");
 			
-			verbose(tree);
-			
-			JsonObject display = tree.getAsJsonObject().getAsJsonObject("display");
+			boolean trace = Log.enabled(Level.TRACE);
 			
 			for(Entry<String, JsonElement> el : display.entrySet()){
 				
@@ -55,7 +46,8 @@ public class ResizeItem implements Tool<ResizeItem> {
 				
 				JsonArray scale = element.getAsJsonArray("scale");
 				
-				verbose("scale:" + scale);
+				if(trace)
+					Log.print("scale:" + scale);
 				
 				double sx = scale.get(0).getAsDouble();
 				double sy = scale.get(1).getAsDouble();
@@ -72,16 +64,12 @@ public class ResizeItem implements Tool<ResizeItem> {
 				
 				element.add("scale", scale);
 				
-				verbose("new scale:" + scale);
+				if(trace)
+					Log.print("new scale:" + scale);
 			}
-			
-			Main.writeFormatted(tree, w);
 		} catch (NullPointerException | ClassCastException e) {
 			
 			throw new ToolException("Malformed model format!");
-		} catch (IOException e) {
-			
-			throw new ToolException("IOException:" + e.getMessage());
 		}
 	}
 
@@ -106,7 +94,13 @@ public class ResizeItem implements Tool<ResizeItem> {
 		
 		public String toString() {
 			
-			return String.format("magnitude: %f, origin: [ %f, %f, %f ], ", magnitude, originX, originY, originZ);
+			return String.format("magnitude: %f, origin: [ %f, %f, %f ], items: %s", magnitude, originX, originY, originZ, items);
+		}
+		
+		@Override
+		public String key() {
+			
+			return magnitude + ";" + originX + "," + originY + "," + originZ + ";" + String.join(",", items);
 		}
 	}
 	
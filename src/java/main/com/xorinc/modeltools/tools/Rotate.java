@@ -1,235 +1,142 @@
 package com.xorinc.modeltools.tools;
 
-import static com.xorinc.modeltools.Main.verbose;
-
-import java.awt.geom.AffineTransform;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.Writer;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map.Entry;
-import java.util.function.BiPredicate;
-import java.util.function.DoubleBinaryOperator;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
 import joptsimple.ValueConversionException;
 import joptsimple.ValueConverter;
 
-import org.apache.commons.lang3.Validate;
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.RealVector;
-
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
-import com.xorinc.modeltools.Main;
-import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.Face;
+import com.xorinc.modeltools.Model;
 
 
-public class Rotate implements Tool<Rotate> {
+public class Rotate implements AffineTool<Rotate> {
 
 	public static final Rotate inst = new Rotate();
-	public static final JsonParser jparser = new JsonParser();
 		
 	private static enum Axis { X, Y, Z }
 	
 	@Override
-	public void execute(InputStream in, OutputStream out, Tool.Args<Rotate> args) throws ToolException {
+	public Affine transform(Tool.Args<Rotate> args) {
 
 		Args a = (Args) args;
 		
-		try(Reader r = new InputStreamReader(in); Writer w = new OutputStreamWriter(out)) {
-						
-			JsonObject tree = new JsonParser().parse(r).getAsJsonObject();
+		return Affine.rotate(a.axis.name().charAt(0), a.angle, a.originX, a.originY, a.originZ);
+	}
+	
+	@Override
+	public boolean flipsV() {
+
+		return true;
+	}
+	
+	@Override
+	public void remapFaces(Model m, int i, Tool.Args<Rotate> args, int filled) {
+		
+		Args a = (Args) args;
+		
+		int axis = a.axis.ordinal();
+		
+		for(int f = 0; f < 6; f++){
 			
-			verbose(tree);
+			int k = 6 * i + f;
 			
-			Validate.isTrue(a.angle % 90 == 0, "angle must me a multiple of 90");
+			if(m.cullface[k] == null)
+				continue;
 			
-			Axis axis = Axis.valueOf(a.axis.toUpperCase());
+			int c = Model.face(m.cullface[k]);
 			
-			tree.getAsJsonArray("elements").forEach(e -> {
-				
-				JsonObject element = e.getAsJsonObject();
-				
-				JsonArray from = element.getAsJsonArray("from");
-				JsonArray to = element.getAsJsonArray("to");
-				
-				verbose("from:" + from);
-				verbose("to:" + to);
-				
-				double fx = from.get(0).getAsDouble();
-				double fy = from.get(1).getAsDouble();
-				double fz = from.get(2).getAsDouble();
-				
-				double tx = to.get(0).getAsDouble();
-				double ty = to.get(1).getAsDouble();
-				double tz = to.get(2).getAsDouble();
-				
-				DoubleBinaryOperator[][] ops = {minOrMax(fx, tx), minOrMax(fy, ty), minOrMax(fz, tz)};
-				
-				if(element.get("faces") != null){
-					JsonObject faces = element.get("faces").getAsJsonObject();
-					
-					String[] names;
-
-					switch(axis) {
-					
-					default:
-					case X: names = "up,north,down,south".split(","); break;
-					case Y: names = "up,east,down,west".split(","); break;
-					case Z: names = "east,north,west,south".split(","); break;
-						
-					}
-					
-					List<String> nList = Arrays.asList(names);
-					
-					for(Entry<String, JsonElement> faceE : faces.entrySet()){
-						
-						if(faceE.getValue().getAsJsonObject().get("uv") != null)
-							continue;
-						
-						JsonObject face = faceE.getValue().getAsJsonObject();
-						JsonArray uv = new JsonArray();
-						
-						switch(faceE.getKey()) {
-						
-							case "up": case "down": {
-								
-								uv.add(new JsonPrimitive(fx));
-								uv.add(new JsonPrimitive(fz));
-								uv.add(new JsonPrimitive(tx));
-								uv.add(new JsonPrimitive(tz));
-								
-							} break;
-						
-							case "north": case "south": {
-								
-								uv.add(new JsonPrimitive(fx));
-								uv.add(new JsonPrimitive(16 - ty));
-								uv.add(new JsonPrimitive(tx));
-								uv.add(new JsonPrimitive(16 - fy));
-								
-							} break;
-														
-							case "east": case "west": {
-								
-								uv.add(new JsonPrimitive(fz));
-								uv.add(new JsonPrimitive(16 - ty));
-								uv.add(new JsonPrimitive(tz));
-								uv.add(new JsonPrimitive(16 - fy));
-								
-							} break;
-							
-						}
-						
-						face.add("uv", uv);
-						
-						verbose(faceE.getKey() + " uv: " + uv);
-						
-						cullface:
-						if(face.get("cullface") != null){
-							
-							String cull = face.get("cullface").getAsString();
-							int index = nList.indexOf(cull);
-							if(index == -1)
-								break cullface;
-							
-							cull = nList.get((index + a.angle / 90) % nList.size());
-							face.addProperty("cullface", cull);
-						}
-					}
-										
-					 List<JsonElement> els = Arrays.stream(names)
-							 					.map(s -> faces.get(s))
-							 					.collect(Collectors.toList());
-					 
-					 IntStream.range(0, els.size())
-					 			.forEach(i -> faces.add(names[i], els.get((i + a.angle / 90) % els.size())));
-					 
-					 verbose(faces);
-					 
-					 faces.entrySet().stream()
-					 			.filter(x -> !nList.contains(x.getKey()))
-					 			.map(x -> x.getValue())
-					 			.forEach(x -> {
-					 				
-					 				JsonPrimitive rotation = x.getAsJsonObject().getAsJsonPrimitive("rotation");
-					 				if(rotation == null)
-					 					rotation = new JsonPrimitive(0);
-					 				
-					 				rotation = new JsonPrimitive((rotation.getAsInt() + a.angle) % 360);
-					 				x.getAsJsonObject().add("rotation", rotation);
-					 				
-					 			});
-				}
-				
-				RealVector origin = new ArrayRealVector(new double[] {a.originX, a.originY, a.originZ});
-								
-				RealVector newFrom = rotate(new ArrayRealVector(new double[] {fx, fy, fz}).subtract(origin), a.angle, axis).add(origin);
-				
-				RealVector newTo = rotate(new ArrayRealVector(new double[] {tx, ty, tz}).subtract(origin), a.angle, axis).add(origin);
-				
-				JsonArray from2 = new JsonArray();
-				JsonArray to2 = new JsonArray();
-				
-				IntStream.range(0, 3).forEach(i -> {
-					
-					from2.add(new JsonPrimitive(ops[i][0].applyAsDouble(newFrom.getEntry(i), newTo.getEntry(i))));
-					to2.add(new JsonPrimitive(ops[i][1].applyAsDouble(newFrom.getEntry(i), newTo.getEntry(i))));
-					
-				});
-				
-				element.add("from", from2);
-				element.add("to", to2);
-				
-				verbose("new from:" + from2);
-				verbose("new to:" + to2);
-				
-				if(element.get("rotation") != null){
-					
-					JsonObject rotation = element.getAsJsonObject("rotation");
-					JsonArray or = rotation.getAsJsonArray("origin");
-					double ox = or.get(0).getAsDouble();
-					double oy = or.get(1).getAsDouble();
-					double oz = or.get(2).getAsDouble();
-					
-					verbose("origin:" + or);
-					
-					RealVector newOr = rotate(new ArrayRealVector(new double[] {ox, oy, oz}).subtract(origin), a.angle, axis).add(origin);
-					
-					or = new JsonArray();
-					or.add(new JsonPrimitive(newOr.getEntry(0)));
-					or.add(new JsonPrimitive(newOr.getEntry(1)));
-					or.add(new JsonPrimitive(newOr.getEntry(2)));
-					
-					verbose("new origin:" + or);
-					
-					rotation.add("origin", or);
-				}
-				
-			});
+			if(c >= 0)
+				m.cullface[k] = Face.of(c).turn(axis, a.turns).id;
+		}
+		
+		// which faces there are, by where they end up
+		int present = 0;
+		
+		for(int f = 0; f < 6; f++){
+			if(m.hasFace(i, f))
+				present |= 1 << Face.of(f).turn(axis, a.turns).ordinal();
+		}
+		
+		// each face takes what turns into it, going around each cycle of faces once through the scratch slot
+		int done = 0;
+		
+		for(int f = 0; f < 6; f++){
 			
-		Main.writeFormatted(tree, w);
+			if(unturn(f, axis, a.turns) == f || (done & 1 << f) != 0)
+				continue;
 			
-		} catch (NullPointerException | ClassCastException e) {
+			int at = f;
 			
-			throw new ToolException("Malformed model format!");
-		} catch (IOException e) {
+			m.copyFace(6 * i + f, m.scratch());
 			
-			throw new ToolException("IOException:" + e.getMessage());
+			for(int src = unturn(f, axis, a.turns); src != f; at = src, src = unturn(at, axis, a.turns)){
+				m.copyFace(6 * i + src, 6 * i + at);
+				done |= 1 << at;
+			}
+			
+			m.copyFace(m.scratch(), 6 * i + at);
+			done |= 1 << at;
 		}
 		
+		for(int f = 0; f < 6; f++){
+			
+			if(unturn(f, axis, a.turns) == f)
+				continue;
+			
+			if((present & 1 << f) != 0)
+				m.addFace(i, f);
+			else
+				m.removeFace(i, f);
+		}
+		
+		for(int f = 0; f < 6; f++){
+			
+			if(unturn(f, axis, a.turns) != f || !m.hasFace(i, f))
+				continue;
+			
+			int k = 6 * i + f;
+			
+			// a rotation that isn't an int is kept in the extras as written
+			JsonElement extra = m.faceExtra[k] != null ? m.faceExtra[k].get("rotation") : null;
+			if(m.rotation[k] == Model.NONE && extra != null && extra.isJsonPrimitive() && extra.getAsJsonPrimitive().isNumber()){
+				m.faceExtra[k].add("rotation", new JsonPrimitive((extra.getAsDouble() + 90 * a.turns) % 360));
+				continue;
+			}
+			
+			int rotation = m.rotation[k] == Model.NONE ? 0 : m.rotation[k];
+			
+			m.rotation[k] = (rotation + 90 * a.turns) % 360;
+		}
+		
+		if(m.otherFaces[i] != null){
+			
+			m.otherFaces[i].entrySet().stream()
+						.map(x -> x.getValue())
+						.forEach(x -> {
+							
+							JsonPrimitive rotation = x.getAsJsonObject().getAsJsonPrimitive("rotation");
+							if(rotation == null)
+								rotation = new JsonPrimitive(0);
+							
+							rotation = new JsonPrimitive((rotation.getAsInt() + 90 * a.turns) % 360);
+							x.getAsJsonObject().add("rotation", rotation);
+							
+						});
+		}
 	}
-
+	
+	// the face that turns into face f
+	private static int unturn(int f, int axis, int turns) {
+		
+		return Face.of(f).unturn(axis, turns).ordinal();
+	}
+	
+	@Override
+	public int version() {
+		
+		return 4;
+	}
+	
 	@Override
 	public ValueConverter<Args> getParser() {
 
@@ -240,19 +147,28 @@ public class Rotate implements Tool<Rotate> {
 		
 		int angle;
 		double originX, originY, originZ;
-		String axis;
+		Axis axis;
+		// quarter turns, 0 to 3
+		int turns;
 		
 		Args(int angle, double x, double y, double z, String axis){
 			this.angle = angle;
 			this.originX = x;
 			this.originY = y;
 			this.originZ = z;
-			this.axis = axis;
+			this.axis = Axis.valueOf(axis.toUpperCase());
+			this.turns = Math.floorMod(angle / 90, 4);
 		}
 		
 		public String toString() {
 			
-			return String.format("angle: %d, origin: [ %f, %f, %f ], axis: %s", angle, originX, originY, originZ, axis);
+			return String.format("angle: %d, origin: [ %f, %f, %f ], axis: %s", angle, originX, originY, originZ, axis.name().toLowerCase());
+		}
+		
+		@Override
+		public String key() {
+			
+			return angle + "," + axis.name().toLowerCase() + "," + originX + "," + originY + "," + originZ;
 		}
 	}
 	
@@ -271,6 +187,10 @@ public class Rotate implements Tool<Rotate> {
 				int angle = Integer.parseInt(parts[0]);
 				String axis = parts[1];
 				
+				if(angle % 90 != 0){
+					throw new ValueConversionException("angle must be a multiple of 90");
+				}
+				
 				if(parts.length >= 5){
 					return new Args(angle, Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), Double.parseDouble(parts[4]), axis);
 				}
@@ -278,6 +198,8 @@ public class Rotate implements Tool<Rotate> {
 					return new Args(angle, defaults[0], defaults[1], defaults[2], axis);
 				}
 				
+			} catch(ValueConversionException e) {
+				throw e;
 			} catch(Exception e) {
 				throw new ValueConversionException("error while parsing options", e);
 			}
@@ -297,49 +219,4 @@ public class Rotate implements Tool<Rotate> {
 		
 	};
 	
-	public RealVector rotate(RealVector v, double angle, Axis axis) {
-		
-		double[] points;
-		
-		switch(axis) {
-		
-		default:
-		case X: points = new double[] { v.getEntry(1), v.getEntry(2) }; break;
-		case Y: points = new double[] { v.getEntry(0), v.getEntry(2) }; break;
-		case Z: points = new double[] { v.getEntry(0), v.getEntry(1) }; break;
-		}
-		
-		AffineTransform.getRotateInstance(Math.toRadians(angle), 0, 0)
-			.transform(points, 0, points, 0, 1);
-		
-		switch(axis) {
-		
-		default:
-		case X: 
-			v.setEntry(1, points[0]); 
-			v.setEntry(2, points[1]);
-			break;
-		case Y: 
-			v.setEntry(0, points[0]); 
-			v.setEntry(2, points[1]);
-			break;
-		case Z: 
-			v.setEntry(0, points[0]); 
-			v.setEntry(1, points[1]);
-			break;
-		}
-		
-		return v;
-	}
-	
-	public DoubleBinaryOperator[] minOrMax(double a, double b){
-		
-		if(a > b){
-			return new DoubleBinaryOperator[] {Math::max, Math::min};
-		}
-		else
-			return new DoubleBinaryOperator[] {Math::min, Math::max};
-		
-	}
-	
 }
@@ -1,24 +1,93 @@
 package com.xorinc.modeltools.tools;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
+import com.xorinc.modeltools.Context;
+import com.xorinc.modeltools.Log;
+import com.xorinc.modeltools.Main;
 import com.xorinc.modeltools.Main.ToolException;
+import com.xorinc.modeltools.Model;
 
 import joptsimple.ValueConverter;
 
 
 public interface Tool<T extends Tool<T>> {
 
-	void execute(InputStream in, OutputStream out, Args<T> args) throws ToolException;
-	
+	void apply(Model model, Args<T> args, Context ctx) throws ToolException;
+
+	default void execute(InputStream in, OutputStream out, Args<T> args) throws ToolException {
+
+		execute(in, out, args, null);
+	}
+
+	default void execute(InputStream in, OutputStream out, Args<T> args, Context ctx) throws ToolException {
+
+		// flattening needs the whole model
+		AffineChain chain = Main.streaming() && (ctx == null || ctx.parents == null) ? chain(args) : null;
+
+		try(Reader r = new InputStreamReader(in); Writer w = new BufferedWriter(new OutputStreamWriter(out))) {
+
+			if(chain != null){
+				chain.stream(new BufferedReader(r), w);
+				return;
+			}
+
+			Model read = Model.read(r);
+			Model model = ctx != null && ctx.parents != null ? ctx.parents.flatten(read) : read;
+
+			Log.debug(() -> model);
+
+			apply(model, args, ctx);
+
+			if(!multifile(args))
+				Main.writeFormatted(model, w);
+
+		} catch (MalformedJsonException | JsonParseException | IllegalStateException e) {
+
+			throw new ToolException("Malformed model format!");
+		} catch (IOException e) {
+
+			throw new ToolException("IOException:" + e.getMessage());
+		}
+	}
+
+	// tools that only move geometry can also run element by element over a token stream
+	default AffineChain chain(Args<T> args) {
+
+		return null;
+	}
+
 	ValueConverter<? extends Args<T>> getParser();
-	
-	public interface Args<T extends Tool<T>> {}
-	
+
+	public interface Args<T extends Tool<T>> {
+
+		// every value the output depends on, written out in full, so BuildCache can tell any two apart
+		String key();
+	}
+
+	// bump when a change to the tool changes its output, so cached results are redone
+	default int version(){
+
+		return 1;
+	}
+
 	default boolean multifile(){
-		
+
 		return false;
 	}
+
+	default boolean multifile(Args<T> args){
+
+		return multifile();
+	}
 }